@@ -0,0 +1,105 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import checkers.BitBoard;
+import checkers.Board;
+import checkers.Move;
+import checkers.MoveList;
+import checkers.UndoRecord;
+
+/**
+ * Move generation, making and unmaking moves, and copying, on Board and
+ * on BitBoard. Each benchmark goes once over the whole corpus.
+ *
+ * Board keeps the legal moves of a position once it has generated them,
+ * so boardLegalMoves applies and undoes a move first to make it generate
+ * them again; boardApplyUndo measures that part on its own.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    @Param({"6", "8", "10"})
+    public int size;
+
+    private Board[] boards;
+    private Move[] firstMoves;
+    private BitBoard[] bitBoards;
+    private long[] firstBitMoves;
+    private MoveList moves;
+
+    @Setup
+    public void setUp() {
+        List<Board> corpus = Positions.corpus(size);
+        boards = new Board[corpus.size()];
+        firstMoves = new Move[corpus.size()];
+        bitBoards = new BitBoard[corpus.size()];
+        firstBitMoves = new long[corpus.size()];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = corpus.get(i);
+            firstMoves[i] = boards[i].getLegalMoves().get(0);
+            bitBoards[i] = new BitBoard(boards[i]);
+            firstBitMoves[i] = bitBoards[i].fromMove(firstMoves[i]);
+        }
+        moves = new MoveList();
+    }
+
+    @Benchmark
+    public void boardCopy(Blackhole bh) {
+        for (Board b : boards) {
+            bh.consume(b.copy());
+        }
+    }
+
+    @Benchmark
+    public void boardApplyUndo(Blackhole bh) {
+        for (int i = 0; i < boards.length; i++) {
+            UndoRecord record = boards[i].applyMove(firstMoves[i]);
+            boards[i].undoMove(record);
+            bh.consume(record);
+        }
+    }
+
+    @Benchmark
+    public void boardLegalMoves(Blackhole bh) {
+        for (int i = 0; i < boards.length; i++) {
+            boards[i].undoMove(boards[i].applyMove(firstMoves[i]));
+            bh.consume(boards[i].getAllLegalMoves(boards[i].getTurn()));
+        }
+    }
+
+    @Benchmark
+    public void bitBoardCopy(Blackhole bh) {
+        for (BitBoard b : bitBoards) {
+            bh.consume(b.copy());
+        }
+    }
+
+    @Benchmark
+    public void bitBoardApplyUndo(Blackhole bh) {
+        for (int i = 0; i < bitBoards.length; i++) {
+            long undo = bitBoards[i].applyMove(firstBitMoves[i]);
+            bitBoards[i].undoMove(firstBitMoves[i], undo);
+            bh.consume(undo);
+        }
+    }
+
+    @Benchmark
+    public void bitBoardLegalMoves(Blackhole bh) {
+        for (BitBoard b : bitBoards) {
+            moves.clear();
+            b.getLegalMoves(moves);
+            bh.consume(moves.size());
+        }
+    }
+}
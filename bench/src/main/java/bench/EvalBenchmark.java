@@ -0,0 +1,53 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ai.AlphaBetaAI.StaticEval;
+import ai.Evaluator;
+import checkers.BitBoard;
+import checkers.Board;
+
+/**
+ * Both static evaluation functions over the corpus, on boards that keep
+ * the evaluator's piece-square score up to date, the way the search uses them.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvalBenchmark {
+
+    @Param({"6", "8", "10"})
+    public int size;
+
+    @Param({"BASIC_PIECEVALUE", "POSITIONAL_PIECEVALUE"})
+    public StaticEval evalType;
+
+    private Evaluator evaluator;
+    private BitBoard[] boards;
+
+    @Setup
+    public void setUp() {
+        evaluator = new Evaluator(evalType);
+        List<Board> corpus = Positions.corpus(size);
+        boards = new BitBoard[corpus.size()];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = new BitBoard(corpus.get(i));
+            boards[i].setPieceSquareTable(evaluator.getPieceSquareTable(size));
+        }
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole bh) {
+        for (BitBoard b : boards) {
+            bh.consume(evaluator.evaluate(b));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import checkers.Board;
+import checkers.Move;
+
+/**
+ * The reference positions the benchmarks run on: the start position and
+ * positions from a fixed set of random games, spread over the opening,
+ * middle game and endgame. The games are replayed from a fixed seed and
+ * the moves are sorted by their squares before one is picked, so the
+ * corpus only changes if the rules do.
+ */
+
+public class Positions {
+
+    public static final int COUNT = 16;
+    private static final long SEED = 20240101L;
+
+    public static List<Board> corpus(int size) {
+        List<Board> positions = new ArrayList<>();
+        positions.add(new Board(size));
+        Random random = new Random(SEED + size);
+        while (positions.size() < COUNT) {
+            Board board = new Board(size);
+            int plies = 4 + random.nextInt(12 * size);
+            for (int i = 0; i < plies && !board.isOver(); i++) {
+                List<Move> moves = new ArrayList<>(board.getLegalMoves());
+                moves.sort(Comparator.comparing(Positions::name));
+                board.applyMove(moves.get(random.nextInt(moves.size())));
+            }
+            if (!board.isOver()) {
+                positions.add(board);
+            }
+        }
+        return positions;
+    }
+
+    private static String name(Move m) {
+        StringBuilder out = new StringBuilder();
+        out.append(m.getOrigin().getY()).append(m.getOrigin().getX())
+                .append(m.getDestination().getY()).append(m.getDestination().getX())
+                .append(m.getCaptures().size());
+        return out.toString();
+    }
+}
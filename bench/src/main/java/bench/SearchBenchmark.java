@@ -0,0 +1,70 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ai.AlphaBetaAI;
+import ai.AlphaBetaAI.SearchMode;
+import ai.AlphaBetaAI.StaticEval;
+import checkers.Board;
+
+/**
+ * A fixed-depth AlphaBetaAI search of each corpus position, single threaded,
+ * without the opening book or tablebase. Every position has its own agent,
+ * whose transposition table is cleared before each invocation, so that no
+ * search profits from a table filled by an earlier one. The search modes
+ * are compared on the same positions at the same depth.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"6", "8", "10"})
+    public int size;
+
+    @Param({"6"})
+    public int depth;
+
+    @Param({"POSITIONAL_PIECEVALUE"})
+    public StaticEval evalType;
+
+    @Param({"ALPHA_BETA", "PVS", "MTDF"})
+    public SearchMode mode;
+
+    private List<Board> corpus;
+    private AlphaBetaAI[] agents;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        corpus = Positions.corpus(size);
+        agents = new AlphaBetaAI[corpus.size()];
+        for (int i = 0; i < agents.length; i++) {
+            agents[i] = new AlphaBetaAI(depth, false, evalType, 4);
+            agents[i].setOpeningBook(null);
+            agents[i].setTablebase(null);
+            agents[i].setSearchMode(mode);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTables() {
+        for (AlphaBetaAI agent : agents) {
+            agent.getTable().clear();
+        }
+    }
+
+    @Benchmark
+    public void chooseMove(Blackhole bh) {
+        for (int i = 0; i < agents.length; i++) {
+            bh.consume(agents[i].chooseMove(corpus.get(i)));
+        }
+    }
+}
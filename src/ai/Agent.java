@@ -4,5 +4,16 @@ import checkers.Board;
 import checkers.Move;
 
 public interface Agent {
+
+    // Deadlines are System.nanoTime() values; this one never comes.
+    long NO_DEADLINE = Long.MAX_VALUE;
+
     Move chooseMove(Board board);
+
+    // Chooses a move, but gives up at the deadline or as soon as the token is
+    // cancelled, and returns the best move found by then. Agents that can't
+    // stop early just choose a move.
+    default Move chooseMove(Board board, CancellationToken token, long deadline) {
+        return chooseMove(board);
+    }
 }
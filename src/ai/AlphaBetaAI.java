@@ -1,14 +1,15 @@
 package ai;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import checkers.BitBoard;
 import checkers.Board;
 import checkers.Board.*;
 import checkers.Move;
-import checkers.Piece;
-import checkers.Square;
+import checkers.MoveList;
 
 public class AlphaBetaAI implements Agent {
 
@@ -16,13 +17,106 @@ public class AlphaBetaAI implements Agent {
         BASIC_PIECEVALUE, POSITIONAL_PIECEVALUE;
     }
 
+    // How each iteration searches the root: plain alpha-beta with an
+    // aspiration window, principal variation search with one, or MTD(f).
+    public enum SearchMode {
+        ALPHA_BETA, PVS, MTDF;
+    }
+
     private int depth;
     private long timeLimitNano;
     private boolean timed;
     private StaticEval evalType;
-    private Random random;
+    private Evaluator evaluator;
+    private TranspositionTable table;
+    private Tablebase tablebase;
+    private OpeningBook book;
+    private long nodes;
+
+    // Lazy SMP: helper agents search the same root on their own threads,
+    // sharing nothing with this one but the transposition table, the
+    // flag that tells them to stop, and the deadline of the search.
+    private AlphaBetaAI[] helpers;
+    private AtomicBoolean stop;
+    private AtomicLong deadline;
+    private boolean helper;
+
+    // Move ordering state: two killer moves per ply, and history
+    // scores for quiet moves by origin and destination.
+    private long[][] killers;
+    private int[][] history;
+    private long[] probe;
+
+    // One move picker per ply, each with its own preallocated move buffer,
+    // so that searching a node doesn't allocate anything.
+    private MovePicker[] pickers;
+
+    // Score of the move the last search chose, from red's point of view.
+    private int lastEval;
+
+    private SearchMode searchMode = SearchMode.ALPHA_BETA;
+
+    // Which selective search techniques are on.
+    private boolean quiescence = true;
+    private boolean lateMoveReductions = true;
+    private boolean futilityPruning = true;
+
+    // Pondering: the search of the position after the opponent's expected
+    // reply, which runs on its own thread during the opponent's turn.
+    // Starting, stopping and taking over the search hold the lock, so that
+    // a new search can't begin while the old one is still being stopped.
+    private final Object ponderLock = new Object();
+    private volatile Thread ponderThread;
+    private long ponderKey;
+    private long ponderResult;
+
+    // Statistics: counters since the start of the current move, the
+    // listeners told about each finished iteration, and the totals
+    // for the last move that was chosen. A ponder hit restarts the clock
+    // from another thread than the search's.
+    private long cutoffs;
+    private long firstMoveCutoffs;
+    private volatile long searchStart;
+    private volatile long searchStartNodes;
+    private volatile long searchBudget;
+    private int searchDepth;
+    private List<SearchListener> listeners;
+    private SearchStats lastStats;
+
+    // Results of the last call to searchRoot.
+    private long rootBestMove;
+    private int rootBestEval;
+    private int rootSearched;
+
+    // Deepest iteration a timed search will start. The
+    // transposition table can't store depths beyond this.
+    private static final int MAX_DEPTH = 127;
+
+    // Bigger than any score, and safe to negate.
+    private static final int INFINITY = 1000000;
+
+    // Nodes between looks at the clock, a power of two.
+    private static final int CLOCK_NODES = 1024;
+
+    // Selective search. Late-move reductions search quiet moves one ply
+    // shallower once LMR_MOVES moves have been tried at a node at least
+    // LMR_DEPTH deep, and search them again at full depth if they turn out
+    // better than expected. Futility pruning skips quiet moves within
+    // FUTILITY_DEPTH plies of the horizon when the static score is so far
+    // below alpha (or above beta) that a quiet move can't make up the
+    // difference, with a margin of FUTILITY_MEN men per ply.
+    private static final int LMR_DEPTH = 3;
+    private static final int LMR_MOVES = 3;
+    private static final int FUTILITY_DEPTH = 2;
+    private static final int FUTILITY_MEN = 1;
 
     public AlphaBetaAI(int strength, boolean timed, StaticEval evalType) {
+        this(strength, timed, evalType, 16);
+    }
+
+    // The transposition table lives as long as the agent does, so
+    // later moves of a game reuse what earlier searches found.
+    public AlphaBetaAI(int strength, boolean timed, StaticEval evalType, int tableMegabytes) {
         this.depth = strength;
         if (timed) {
             this.timeLimitNano = (long) strength*1000000000;
@@ -31,198 +125,796 @@ public class AlphaBetaAI implements Agent {
         }
         this.timed = timed;
         this.evalType = evalType;
-        this.random = new Random();
+        this.evaluator = new Evaluator(evalType);
+        this.table = new TranspositionTable(tableMegabytes);
+        this.tablebase = Tablebase.getDefault();
+        this.book = OpeningBook.getDefault();
+        this.killers = new long[MAX_DEPTH + 1][2];
+        this.history = new int[64][64];
+        this.probe = new long[2];
+        this.pickers = newPickers();
+        this.helpers = new AlphaBetaAI[0];
+        this.stop = new AtomicBoolean(false);
+        this.deadline = new AtomicLong(Long.MAX_VALUE);
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    // Internal constructor used only for helper threads.
+    private AlphaBetaAI(AlphaBetaAI main) {
+        this.depth = main.depth;
+        this.timeLimitNano = main.timeLimitNano;
+        this.timed = main.timed;
+        this.evalType = main.evalType;
+        this.evaluator = new Evaluator(evalType);
+        this.table = main.table;
+        this.tablebase = main.tablebase;
+        this.killers = new long[MAX_DEPTH + 1][2];
+        this.history = new int[64][64];
+        this.probe = new long[2];
+        this.pickers = newPickers();
+        this.helpers = new AlphaBetaAI[0];
+        this.stop = main.stop;
+        this.deadline = main.deadline;
+        this.searchMode = main.searchMode;
+        this.quiescence = main.quiescence;
+        this.lateMoveReductions = main.lateMoveReductions;
+        this.futilityPruning = main.futilityPruning;
+        this.helper = true;
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    private static MovePicker[] newPickers() {
+        MovePicker[] pickers = new MovePicker[MAX_DEPTH + 1];
+        for (int i = 0; i < pickers.length; i++) {
+            pickers[i] = new MovePicker();
+        }
+        return pickers;
+    }
+
+    // The endgame tablebase to consult, or null for none. Agents start
+    // with the shared default tablebase, if there is one.
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+        for (AlphaBetaAI helper : helpers) {
+            helper.tablebase = tablebase;
+        }
+    }
+
+    public Tablebase getTablebase() {
+        return tablebase;
+    }
+
+    // The opening book to play from, or null for none. Agents start
+    // with the shared default book, if there is one.
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    public OpeningBook getOpeningBook() {
+        return book;
+    }
+
+    // Total number of search threads, including the one calling chooseMove.
+    public void setThreads(int threads) {
+        helpers = new AlphaBetaAI[Math.max(0, threads - 1)];
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new AlphaBetaAI(this);
+        }
+    }
+
+    public int getThreads() {
+        return helpers.length + 1;
+    }
+
+    public void setSearchMode(SearchMode searchMode) {
+        this.searchMode = searchMode;
+        for (AlphaBetaAI helper : helpers) {
+            helper.searchMode = searchMode;
+        }
     }
 
+    public SearchMode getSearchMode() {
+        return searchMode;
+    }
+
+    // Quiescence search: instead of stopping at the horizon in the middle
+    // of an exchange, carry on with captures until the position is quiet.
+    public void setQuiescence(boolean quiescence) {
+        this.quiescence = quiescence;
+        for (AlphaBetaAI helper : helpers) {
+            helper.quiescence = quiescence;
+        }
+    }
+
+    public boolean isQuiescence() {
+        return quiescence;
+    }
+
+    public void setLateMoveReductions(boolean lateMoveReductions) {
+        this.lateMoveReductions = lateMoveReductions;
+        for (AlphaBetaAI helper : helpers) {
+            helper.lateMoveReductions = lateMoveReductions;
+        }
+    }
+
+    public boolean isLateMoveReductions() {
+        return lateMoveReductions;
+    }
+
+    public void setFutilityPruning(boolean futilityPruning) {
+        this.futilityPruning = futilityPruning;
+        for (AlphaBetaAI helper : helpers) {
+            helper.futilityPruning = futilityPruning;
+        }
+    }
+
+    public boolean isFutilityPruning() {
+        return futilityPruning;
+    }
+
+    // The search makes and unmakes moves on a single BitBoard copy of the
+    // position; only the chosen move is translated back to the given board.
+    // Book moves, forced moves and positions the tablebase settles are
+    // played without a search.
     @Override
     public Move chooseMove(Board board) {
-        Player who = board.getTurn();
-        List<Move> legalMoves = board.getAllLegalMoves(board.getTurn());
-
-        long timePerMove = timeLimitNano / ((long) legalMoves.size());
-
-        Move bestMove = null;
-        if (who == Player.RED) {
-            int maxEval = Integer.MIN_VALUE;
-            for (Move m : legalMoves) {
-                Board future = board.copy();
-                future.applyMove(future.transferMove(m));
-                int eval;
-                if (timed) {
-                    // System.out.println("Total time " + timeLimitNano + " Time per move: " + timePerMove);
-                    eval = timedAlphaBeta(future, Player.WHITE, timePerMove);
-                } else {
-                    eval = alphaBeta(future, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, Player.WHITE,
-                            Long.MAX_VALUE);
-                }
-                if (eval > maxEval) {
-                    maxEval = eval;
-                    bestMove = m;
+        return chooseMove(board, new CancellationToken(), NO_DEADLINE);
+    }
+
+    // The search stops at whichever comes first of the deadline and this
+    // agent's own time limit, or when the token is cancelled.
+    @Override
+    public Move chooseMove(Board board, CancellationToken token, long deadline) {
+        BitBoard position = new BitBoard(board);
+        position.setPieceSquareTable(evaluator.getPieceSquareTable(position.getSize()));
+        synchronized (ponderLock) {
+            if (ponderThread != null) {
+                if (ponderKey == position.getHash()) {
+                    return position.toMove(board, ponderHit(token, deadline));
                 }
+                stopPondering();
             }
-        } else {
-            int minEval = Integer.MAX_VALUE;
-            for (Move m : legalMoves) {
-                Board future = board.copy();
-                future.applyMove(future.transferMove(m));
-                int eval;
-                if (timed) {
-                    eval = timedAlphaBeta(future, Player.RED, timePerMove);
-                } else {
-                    eval = alphaBeta(future, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, Player.RED,
-                            Long.MAX_VALUE);
-                }
-                if (eval < minEval) {
-                    minEval = eval;
-                    bestMove = m;
-                }
+        }
+        startStats();
+        MoveList rootMoves = new MoveList();
+        position.getLegalMoves(rootMoves);
+        if (rootMoves.size() == 1) {
+            lastStats = stats(SearchStats.Source.FORCED);
+            return position.toMove(board, rootMoves.get(0));
+        }
+        long bookMove = book == null ? 0 : book.lookup(position);
+        if (bookMove != 0) {
+            lastStats = stats(SearchStats.Source.BOOK);
+            return position.toMove(board, bookMove);
+        }
+        long tablebaseMove = tablebaseMove(position, rootMoves);
+        if (tablebaseMove != 0) {
+            lastStats = stats(SearchStats.Source.TABLEBASE);
+            return position.toMove(board, tablebaseMove);
+        }
+        startSearch(Math.min(searchDeadline(), deadline));
+        Runnable cancel = () -> stop.set(true);
+        token.onCancel(cancel);
+        try {
+            return position.toMove(board, search(position, rootMoves));
+        } finally {
+            token.removeOnCancel(cancel);
+        }
+    }
+
+    // Starts searching, on a thread of its own, the position the opponent's
+    // expected reply would lead to. The board is the position after this
+    // agent's move, with the opponent to move; the expected reply is the
+    // best move the table has for it. If the opponent does play that move,
+    // the next chooseMove carries on with the search that's already under
+    // way instead of starting over. Otherwise the search is dropped.
+    public void startPondering(Board board) {
+        synchronized (ponderLock) {
+            stopPondering();
+            ponder(board);
+        }
+    }
+
+    private void ponder(Board board) {
+        BitBoard position = new BitBoard(board);
+        position.setPieceSquareTable(evaluator.getPieceSquareTable(position.getSize()));
+        if (position.isOver() || !table.probe(position.getHash(), probe) || !position.isLegal(probe[1])) {
+            return;
+        }
+        position.applyMove(probe[1]);
+        MoveList rootMoves = new MoveList();
+        position.getLegalMoves(rootMoves);
+        // Positions chooseMove answers without a search aren't worth pondering.
+        if (rootMoves.size() < 2 || (book != null && book.lookup(position) != 0) ||
+                tablebaseMove(position, rootMoves) != 0) {
+            return;
+        }
+        ponderKey = position.getHash();
+        startStats();
+        searchBudget = 0;
+        startSearch(Long.MAX_VALUE);
+        Thread thread = new Thread(() -> ponderResult = search(position, rootMoves), "AlphaBetaAI ponder");
+        thread.setDaemon(true);
+        thread.start();
+        ponderThread = thread;
+    }
+
+    // Abandons the search started by startPondering, if it's still running.
+    public void stopPondering() {
+        synchronized (ponderLock) {
+            if (ponderThread != null) {
+                stop.set(true);
+                joinPonderThread();
+            }
+        }
+    }
+
+    public boolean isPondering() {
+        return ponderThread != null;
+    }
+
+    // The opponent played the expected move: from now on the search that's
+    // been running has the usual time to finish, or else its usual depth.
+    // Its statistics count from the hit, as the time before it was the
+    // opponent's.
+    private long ponderHit(CancellationToken token, long deadline) {
+        searchBudget = timed ? timeLimitNano : 0;
+        searchStartNodes = getNodeCount();
+        searchStart = System.nanoTime();
+        this.deadline.set(Math.min(searchDeadline(), deadline));
+        Runnable cancel = () -> stop.set(true);
+        token.onCancel(cancel);
+        try {
+            joinPonderThread();
+        } finally {
+            token.removeOnCancel(cancel);
+        }
+        return ponderResult;
+    }
+
+    // Waits for the search to end, as the next one mustn't start until it
+    // has. Being interrupted stops the search rather than the wait.
+    private void joinPonderThread() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                ponderThread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                stop.set(true);
+            }
+        }
+        ponderThread = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Set before the search starts, so that stopping a search that's only
+    // just been started on another thread can't be undone by the search.
+    // The deadline can still be moved while the search runs.
+    private void startSearch(long deadlineNanos) {
+        stop.set(false);
+        deadline.set(deadlineNanos);
+    }
+
+    private long searchDeadline() {
+        return timed ? System.nanoTime() + timeLimitNano : Long.MAX_VALUE;
+    }
+
+    // Searches the position the way chooseMove does, but without any of its
+    // shortcuts, and returns the score of the best move from red's point of
+    // view. Meant for tools that need scores rather than moves.
+    public int evaluate(Board board) {
+        stopPondering();
+        startStats();
+        BitBoard position = new BitBoard(board);
+        position.setPieceSquareTable(evaluator.getPieceSquareTable(position.getSize()));
+        MoveList rootMoves = new MoveList();
+        position.getLegalMoves(rootMoves);
+        if (rootMoves.size() == 0) {
+            return evaluator.evaluate(position);
+        }
+        startSearch(searchDeadline());
+        search(position, rootMoves);
+        return lastEval;
+    }
+
+    // Listeners are told about every iteration the calling thread finishes.
+    public void addSearchListener(SearchListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeSearchListener(SearchListener listener) {
+        listeners.remove(listener);
+    }
+
+    // What the last call to chooseMove did, or null before the first one.
+    public SearchStats getLastStats() {
+        return lastStats;
+    }
+
+    private void startStats() {
+        searchStart = System.nanoTime();
+        searchStartNodes = getNodeCount();
+        searchBudget = timed ? timeLimitNano : 0;
+        searchDepth = 0;
+        lastEval = 0;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        table.resetStats();
+    }
+
+    private SearchStats stats(SearchStats.Source source) {
+        long hits = table.getHits();
+        return new SearchStats(source, searchDepth, lastEval, getNodeCount() - searchStartNodes, cutoffs,
+                firstMoveCutoffs, hits, hits + table.getMisses() + table.getCollisions(),
+                System.nanoTime() - searchStart, searchBudget, getThreads());
+    }
+
+    // Deepens one ply at a time over the whole root, searching the last
+    // iteration's best move first inside an aspiration window around its
+    // score. Timed searches keep going until the time is up, and then use
+    // the best result that was completed.
+    private long search(BitBoard position, MoveList rootMoves) {
+        // An untimed search looks at the root move plus depth more plies.
+        int maxDepth = timed ? MAX_DEPTH : depth + 1;
+
+        Thread[] helperThreads = new Thread[helpers.length];
+        for (int i = 0; i < helpers.length; i++) {
+            // Odd helpers start one ply deeper, so that at any moment the
+            // threads are spread over neighbouring depths.
+            AlphaBetaAI helper = helpers[i];
+            BitBoard helperPosition = position.copy();
+            int firstDepth = 1 + (i % 2);
+            helperThreads[i] = new Thread(() -> helper.helperSearch(helperPosition, firstDepth,
+                    Math.min(maxDepth + 1, MAX_DEPTH)), "AlphaBetaAI helper " + (i + 1));
+            helperThreads[i].setDaemon(true);
+            helperThreads[i].start();
+        }
+
+        long bestMove = iterativeDeepening(position, rootMoves, 1, maxDepth);
+
+        stop.set(true);
+        for (Thread t : helperThreads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
+        lastStats = stats(SearchStats.Source.SEARCH);
         return bestMove;
     }
 
-    // Red is the maximizing player, and white
-    // is the minimizing player.
-    // TODO: Add more static evaluation options.
-    private int basicPieceValueStaticEval(Board board) {
-        int eval = 0;
-        if (board.isOver()) {
-            Player winner = board.findWinner();
-            if (winner == Player.RED) {
-                return 1000;
-            }  else if (winner == Player.WHITE) {
-                return -1000;
-            } else {
+    // If the tablebase knows the value of every root move, there's no need
+    // to search: win as fast as possible, or else draw, or else lose as
+    // slowly as possible. Returns 0 if the tablebase can't decide.
+    private long tablebaseMove(BitBoard position, MoveList rootMoves) {
+        if (tablebase == null || Long.bitCount(position.getPieces(Player.RED) |
+                position.getPieces(Player.WHITE)) > tablebase.getMaxPieces(position.getSize())) {
+            return 0;
+        }
+        Player player = position.getTurn();
+        long bestMove = 0;
+        int bestRank = Integer.MIN_VALUE;
+        for (int i = 0; i < rootMoves.size(); i++) {
+            long m = rootMoves.get(i);
+            long undo = position.applyMove(m);
+            int value = position.findWinner() == player ? Tablebase.loss(0) : tablebase.probe(position);
+            position.undoMove(m, undo);
+            if (value == Tablebase.UNKNOWN) {
                 return 0;
             }
+            // Values are from the opponent's point of view.
+            int rank;
+            if (Tablebase.isLoss(value)) {
+                rank = 1000 - Tablebase.getDistance(value);
+            } else if (Tablebase.isWin(value)) {
+                rank = -1000 + Tablebase.getDistance(value);
+            } else {
+                rank = 0;
+            }
+            if (rank > bestRank) {
+                bestRank = rank;
+                bestMove = m;
+            }
         }
-        for (Square s : board.getPieces(Player.RED)) {
-            if (s.getContents().getType() == Piece.Type.MAN) {
-                eval += 5;
+        return bestMove;
+    }
+
+    // Helpers only exist to fill the shared table; their own results are dropped.
+    private void helperSearch(BitBoard position, int firstDepth, int maxDepth) {
+        MoveList rootMoves = new MoveList();
+        position.getLegalMoves(rootMoves);
+        iterativeDeepening(position, rootMoves, firstDepth, maxDepth);
+    }
+
+    // Scores inside the search are negamax scores, from the point of view of
+    // the side to move, and are only turned round to red's point of view to
+    // be reported. Each iteration runs the selected driver at the root.
+    private long iterativeDeepening(BitBoard position, MoveList rootMoves, int firstDepth,
+                                    int maxDepth) {
+        ageOrderingTables();
+        long bestMove = rootMoves.get(0);
+        int bestEval = 0;
+        for (int d = firstDepth; d <= maxDepth && !stop.get() && !isPastDeadline(); d++) {
+            SearchIterationEvent event = new SearchIterationEvent();
+            event.begin();
+            boolean completed = searchMode == SearchMode.MTDF ?
+                    mtdf(position, rootMoves, d, bestEval, event) :
+                    aspirationSearch(position, rootMoves, d, d > firstDepth, bestEval, event);
+            if (!completed) {
+                // Out of time. A partial iteration still improves on the last one
+                // if it finished the old best move and then found a better one.
+                if (rootSearched > 0) {
+                    bestMove = rootBestMove;
+                    bestEval = rootBestEval;
+                }
+                lastEval = redScore(position, bestEval);
+                return bestMove;
+            }
+            bestMove = rootBestMove;
+            bestEval = rootBestEval;
+            moveToFront(rootMoves, bestMove);
+            if (!helper) {
+                iterationFinished(d, redScore(position, bestEval), event);
+            }
+        }
+        lastEval = redScore(position, bestEval);
+        return bestMove;
+    }
+
+    // Searches the root inside a window around the last iteration's score,
+    // widening it on the side that fails. Leaves the result in rootBestMove
+    // and rootBestEval. On running out of time, rootSearched is left at 0
+    // unless the partial result can be trusted.
+    private boolean aspirationSearch(BitBoard position, MoveList rootMoves, int depth, boolean aspiration,
+                                     int guess, SearchIterationEvent event) {
+        int alpha = aspiration ? guess - aspirationWindow() : -INFINITY;
+        int beta = aspiration ? guess + aspirationWindow() : INFINITY;
+        while (true) {
+            boolean completed = searchRoot(position, rootMoves, depth, alpha, beta);
+            boolean failedLow = rootBestEval <= alpha && alpha != -INFINITY;
+            boolean failedHigh = rootBestEval >= beta && beta != INFINITY;
+            if (!completed) {
+                if (failedLow || failedHigh) {
+                    rootSearched = 0;
+                }
+                return false;
+            } else if (failedLow) {
+                alpha = -INFINITY;
+            } else if (failedHigh) {
+                beta = INFINITY;
             } else {
-                eval += 10;
+                return true;
             }
+            event.researches++;
         }
-        for (Square s : board.getPieces(Player.WHITE)) {
-            if (s.getContents().getType() == Piece.Type.MAN) {
-                eval -= 5;
+    }
+
+    // MTD(f): closes in on the score with null-window searches, each of which
+    // only says whether the score is above or below a bound. The table keeps
+    // what the earlier passes found, so each pass is mostly cheap. The best
+    // move is the one that lifted the lower bound last.
+    private boolean mtdf(BitBoard position, MoveList rootMoves, int depth, int guess,
+                         SearchIterationEvent event) {
+        int score = guess;
+        int lower = -INFINITY;
+        int upper = INFINITY;
+        long bestMove = rootMoves.get(0);
+        while (lower < upper) {
+            int beta = score == lower ? score + 1 : score;
+            if (!searchRoot(position, rootMoves, depth, beta - 1, beta)) {
+                rootSearched = 0;
+                return false;
+            }
+            score = rootBestEval;
+            if (score < beta) {
+                upper = score;
             } else {
-                eval -= 10;
+                lower = score;
+                bestMove = rootBestMove;
             }
+            event.researches++;
         }
-        return eval + random.nextInt(10) - 5;
+        rootBestMove = bestMove;
+        rootBestEval = score;
+        return true;
     }
 
-    private int positionalPieceValueStaticEval(Board board) {
-        int redWeight, whiteWeight;
-        if (board.getTurn() == Player.RED) {
-            redWeight = 0;
-            whiteWeight = 10;
-        } else {
-            redWeight = 10;
-            whiteWeight = -10;
+    private void iterationFinished(int depth, int eval, SearchIterationEvent event) {
+        searchDepth = depth;
+        lastEval = eval;
+        event.end();
+        if (event.shouldCommit()) {
+            event.depth = depth;
+            event.score = eval;
+            event.nodes = getNodeCount() - searchStartNodes;
+            event.cutoffs = cutoffs;
+            event.commit();
         }
-        int eval = 0;
-        if (board.isOver()) {
-            Player winner = board.findWinner();
-            if (winner == Player.RED) {
-                return 10000;
-            }  else if (winner == Player.WHITE) {
-                return -10000;
-            } else {
-                return 0;
+        if (!listeners.isEmpty()) {
+            SearchStats stats = stats(SearchStats.Source.SEARCH);
+            for (SearchListener listener : listeners) {
+                listener.iterationFinished(stats);
             }
         }
-        for (Square s : board.getPieces(Player.RED)) {
-            if (s.getContents().getType() == Piece.Type.MAN) {
-                if (s.getY() < board.getSize() / 2) {
-                    eval += 80 + redWeight;
-                } else if (s.getY() == board.getSize()-1) {
-                    eval += 70 + redWeight;
-                } else {
-                    eval += 50 + redWeight;
-                }
+    }
+
+    // The search stops at the deadline, or when the main thread has finished
+    // or been cancelled. The clock is only read every CLOCK_NODES nodes;
+    // once the deadline has passed, the stop flag keeps every thread cut off.
+    private boolean isCutOff() {
+        return stop.get() || ((nodes & (CLOCK_NODES - 1)) == 0 && isPastDeadline());
+    }
+
+    private boolean isPastDeadline() {
+        if (System.nanoTime() > deadline.get()) {
+            stop.set(true);
+            return true;
+        }
+        return false;
+    }
+
+    // Searches the root moves in order to the given depth, leaving the best
+    // move and its evaluation in rootBestMove and rootBestEval. rootSearched
+    // counts the moves that were searched completely. Returns false if the
+    // search was cut off by the time limit. With principal variation search,
+    // only the first move gets the full window; the others are first asked
+    // whether they beat it at all.
+    private boolean searchRoot(BitBoard board, MoveList moves, int depth, int alpha, int beta) {
+        rootBestMove = 0;
+        rootBestEval = -INFINITY;
+        rootSearched = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            long m = moves.get(i);
+            long undo = board.applyMove(m);
+            int eval;
+            if (i == 0 || searchMode != SearchMode.PVS) {
+                eval = -negamax(board, depth-1, 1, -beta, -alpha);
             } else {
-                eval += 120 + redWeight;
-            }
-            eval -= (Math.abs(s.getX() - (board.getSize()-1)/2)*2);
-        }
-        for (Square s : board.getPieces(Player.WHITE)) {
-            if (s.getContents().getType() == Piece.Type.MAN) {
-                if (s.getY() > board.getSize() / 2) {
-                    eval -= 80 - whiteWeight;
-                } else if (s.getY() == 0) {
-                    eval -= 70 - whiteWeight;
-                } else {
-                    eval -= 50 - whiteWeight;
+                eval = -negamax(board, depth-1, 1, -alpha - 1, -alpha);
+                if (eval > alpha && eval < beta && !isCutOff()) {
+                    eval = -negamax(board, depth-1, 1, -beta, -alpha);
                 }
-            } else {
-                eval -= 120 - whiteWeight;
             }
-            eval += (Math.abs(s.getX() - (board.getSize()-1)/2)*2);
+            board.undoMove(m, undo);
+            if (isCutOff()) {
+                return false;
+            }
+            rootSearched++;
+            if (eval > rootBestEval) {
+                rootBestEval = eval;
+                rootBestMove = m;
+            }
+            alpha = Math.max(alpha, eval);
+            // Only possible when searching with a window.
+            if (alpha >= beta) {
+                return true;
+            }
         }
-        return eval + random.nextInt(10) - 5;
+        return true;
     }
 
+    // A won tablebase position scores just short of a won game, less
+    // the plies it takes, so that quicker wins and slower losses are
+    // preferred. Scores are from the side to move's point of view.
+    private int tablebaseScore(int value) {
+        if (Tablebase.isWin(value)) {
+            return evaluator.getWinScore() - 1 - Tablebase.getDistance(value);
+        } else if (Tablebase.isLoss(value)) {
+            return -(evaluator.getWinScore() - 1 - Tablebase.getDistance(value));
+        } else {
+            return 0;
+        }
+    }
 
-    private int alphaBeta(Board board, int depth, int alpha, int beta, Player player, long cutoff) {
-        if (System.nanoTime() > cutoff) {
+    // The evaluator's score, from the side to move's point of view.
+    private int evaluate(BitBoard board) {
+        int eval = evaluator.evaluate(board);
+        return board.getTurn() == Player.RED ? eval : -eval;
+    }
+
+    // A score from the point of view of the side to move at the root, from red's.
+    private static int redScore(BitBoard root, int score) {
+        return root.getTurn() == Player.RED ? score : -score;
+    }
+
+    // Quiet moves that cause a cutoff become killer moves for their ply,
+    // and earn history credit that grows with the depth of the search.
+    // searched is the number of moves tried at the node, this one included.
+    private void rememberCutoff(long move, int depth, int ply, int searched) {
+        cutoffs++;
+        if (searched == 1) {
+            firstMoveCutoffs++;
+        }
+        if (BitBoard.isCapture(move)) {
+            return;
+        }
+        long[] slots = killers[ply];
+        if (slots[0] != move) {
+            slots[1] = slots[0];
+            slots[0] = move;
+        }
+        history[BitBoard.getOrigin(move)][BitBoard.getDestination(move)] += depth*depth;
+    }
+
+    // Killers are only useful within one search, but history scores carry
+    // over to the next move at half weight so they don't grow forever.
+    private void ageOrderingTables() {
+        for (long[] slots : killers) {
+            slots[0] = 0;
+            slots[1] = 0;
+        }
+        for (int[] row : history) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] /= 2;
+            }
+        }
+    }
+
+    // Half the width of the window around the last iteration's score.
+    // Roughly half a man in either evaluation.
+    private int aspirationWindow() {
+        if (evalType == StaticEval.BASIC_PIECEVALUE) {
+            return 10;
+        } else {
+            return 40;
+        }
+    }
+
+    private static void moveToFront(MoveList moves, long move) {
+        for (int i = 1; i < moves.size(); i++) {
+            if (moves.get(i) == move) {
+                long first = moves.get(0);
+                moves.set(0, move);
+                moves.set(i, first);
+                return;
+            }
+        }
+    }
+
+    private int negamax(BitBoard board, int depth, int ply, int alpha, int beta) {
+        if (isCutOff()) {
             return 0;
         }
-        if (depth == 0 || board.isOver()) {
-            if (evalType == StaticEval.BASIC_PIECEVALUE) {
-                return basicPieceValueStaticEval(board);
+        nodes++;
+        if (tablebase != null) {
+            int value = tablebase.probe(board);
+            if (value != Tablebase.UNKNOWN) {
+                return tablebaseScore(value);
+            }
+        }
+        if (board.isOver()) {
+            return evaluate(board);
+        }
+        if (depth == 0) {
+            return quiescence ? quiesce(board, ply, alpha, beta) : evaluate(board);
+        }
+
+        // A deep enough stored result may settle this node without a search.
+        long key = board.getHash();
+        long entry = 0;
+        long hashMove = 0;
+        if (table.probe(key, probe)) {
+            entry = probe[0];
+            hashMove = probe[1];
+        }
+        if (entry != 0 && TranspositionTable.getDepth(entry) >= depth) {
+            int score = TranspositionTable.getScore(entry);
+            TranspositionTable.Bound bound = TranspositionTable.getBound(entry);
+            if (bound == TranspositionTable.Bound.EXACT) {
+                return score;
+            } else if (bound == TranspositionTable.Bound.LOWER) {
+                alpha = Math.max(alpha, score);
             } else {
-                return positionalPieceValueStaticEval(board);
+                beta = Math.min(beta, score);
+            }
+            if (alpha >= beta) {
+                return score;
             }
         }
+        int alphaOrig = alpha;
+        int betaOrig = beta;
 
-        List<Move> legalMoves = board.getAllLegalMoves(player);
-        if (player == Player.RED) {
-            int maxEval = Integer.MIN_VALUE;
-            for (Move m : legalMoves) {
-                Board future = board.copy();
-                future.applyMove(future.transferMove(m));
-                int eval = alphaBeta(future, depth-1, alpha, beta, Player.WHITE, cutoff);
-                maxEval = Math.max(maxEval, eval);
-                alpha = Math.max(alpha, eval);
-                if (beta <= alpha) {
-                    break;
-                }
+        // Near the horizon, a static score far enough below alpha means
+        // quiet moves aren't worth searching. Scores close to a win are
+        // left alone, since no margin covers them.
+        int futilityScore = 0;
+        boolean futile = false;
+        if (futilityPruning && depth <= FUTILITY_DEPTH && Math.abs(alpha) < evaluator.getWinScore() / 2 &&
+                Math.abs(beta) < evaluator.getWinScore() / 2) {
+            futilityScore = evaluate(board) + depth * FUTILITY_MEN * evaluator.getManValue();
+            futile = futilityScore <= alpha;
+        }
+
+        MovePicker picker = pickers[ply];
+        picker.reset(board, hashMove, killers[ply], history);
+        boolean pvs = searchMode == SearchMode.PVS;
+        int best = -INFINITY;
+        long bestMove = 0;
+        long m;
+        int searched = 0;
+        while ((m = picker.next()) != 0) {
+            boolean quiet = picker.isLateQuiet();
+            if (futile && quiet && searched > 0) {
+                best = Math.max(best, futilityScore);
+                continue;
             }
-            return maxEval;
-        } else {
-            int minEval = Integer.MAX_VALUE;
-            for (Move m : legalMoves) {
-                Board future = board.copy();
-                future.applyMove(future.transferMove(m));
-                int eval = alphaBeta(future, depth-1, alpha, beta, Player.RED, cutoff);
-                minEval = Math.min(minEval, eval);
-                beta = Math.min(beta, eval);
-                if (beta <= alpha) {
-                    break;
+            searched++;
+            long undo = board.applyMove(m);
+            boolean reduce = lateMoveReductions && quiet && depth >= LMR_DEPTH && searched > LMR_MOVES;
+            int eval;
+            if (reduce || (pvs && searched > 1)) {
+                // A null window asks whether the move beats alpha at all,
+                // one ply shallower if it's reduced. A reduced move that
+                // does is searched again at full depth.
+                eval = -negamax(board, reduce ? depth-2 : depth-1, ply+1, -alpha - 1, -alpha);
+                if (reduce && eval > alpha && !isCutOff()) {
+                    eval = pvs ? -negamax(board, depth-1, ply+1, -alpha - 1, -alpha) :
+                            -negamax(board, depth-1, ply+1, -beta, -alpha);
+                }
+                if (pvs && eval > alpha && eval < beta && !isCutOff()) {
+                    eval = -negamax(board, depth-1, ply+1, -beta, -alpha);
                 }
+            } else {
+                eval = -negamax(board, depth-1, ply+1, -beta, -alpha);
+            }
+            board.undoMove(m, undo);
+            if (eval > best) {
+                best = eval;
+                bestMove = m;
+            }
+            alpha = Math.max(alpha, eval);
+            if (alpha >= beta) {
+                rememberCutoff(m, depth, ply, searched);
+                break;
             }
-            return minEval;
         }
+
+        // Results of a search that ran out of time are meaningless.
+        if (!isCutOff()) {
+            TranspositionTable.Bound bound;
+            if (best <= alphaOrig) {
+                bound = TranspositionTable.Bound.UPPER;
+            } else if (best >= betaOrig) {
+                bound = TranspositionTable.Bound.LOWER;
+            } else {
+                bound = TranspositionTable.Bound.EXACT;
+            }
+            table.store(key, depth, bound, best, bestMove);
+        }
+        return best;
     }
 
-    // TODO: Implement Zobrist hashing to avoid re-computing positions.
-    // TODO: Make the actual time spent thinking closer to the given time limit.
-    private int timedAlphaBeta(Board board, Player player, long timeLimitNano) {
-        long start = System.nanoTime();
-        long end = start + timeLimitNano;
-        int depth = 0;
-        int eval = 0;
-        List<Integer> evals = new ArrayList<>();
-        while(System.nanoTime() < end) {
-            eval = alphaBeta(board, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, player, end);
-            evals.add(eval);
-            depth++;
+    // Resolves the captures pending at the horizon, so that leaves aren't
+    // scored halfway through an exchange. Captures aren't compulsory, so
+    // the side to move can always stand pat on the static score instead.
+    private int quiesce(BitBoard board, int ply, int alpha, int beta) {
+        int best = evaluate(board);
+        if (best >= beta || board.isOver() || ply >= MAX_DEPTH) {
+            return best;
+        }
+        MovePicker picker = pickers[ply];
+        picker.resetCaptures(board);
+        long m;
+        while ((m = picker.next()) != 0) {
+            alpha = Math.max(alpha, best);
+            if (isCutOff()) {
+                return 0;
+            }
+            nodes++;
+            long undo = board.applyMove(m);
+            int eval = -quiesce(board, ply + 1, -beta, -alpha);
+            board.undoMove(m, undo);
+            best = Math.max(best, eval);
+            if (best >= beta) {
+                break;
+            }
         }
-        // Return the second-to-last result found, because the last computation
-        // will have been cut short.
-        return evals.get(evals.size()-2);
+        return best;
     }
 
     public int getDepth() {
@@ -231,4 +923,17 @@ public class AlphaBetaAI implements Agent {
     public StaticEval getEvalType() {
         return evalType;
     }
+
+    // Number of positions searched by this agent so far, helpers included.
+    public long getNodeCount() {
+        long total = nodes;
+        for (AlphaBetaAI helper : helpers) {
+            total += helper.nodes;
+        }
+        return total;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
 }
@@ -0,0 +1,39 @@
+package ai;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Lets one thread ask a search running on another thread to stop. The
+ * search registers an action that stops it, so cancelling costs the search
+ * nothing while it runs, and the search can return the best move it had.
+ */
+
+public class CancellationToken {
+
+    private volatile boolean cancelled;
+    private final List<Runnable> actions = new CopyOnWriteArrayList<>();
+
+    public void cancel() {
+        cancelled = true;
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Runs the action when the token is cancelled, or right away if it already has been.
+    public void onCancel(Runnable action) {
+        actions.add(action);
+        if (cancelled) {
+            action.run();
+        }
+    }
+
+    public void removeOnCancel(Runnable action) {
+        actions.remove(action);
+    }
+}
@@ -0,0 +1,210 @@
+package ai;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import checkers.BitBoard;
+import checkers.Zobrist;
+import checkers.Board.*;
+
+/**
+ * The weights of the positional evaluation. They can be read from a
+ * weights file, as written by tools.TexelTuner: one "name value" pair per
+ * line, with # starting a comment. Weights a file leaves out keep their
+ * default values.
+ *
+ * The positional score is linear in the weights, so it's also the dot
+ * product of the weights and a position's features, which is how the
+ * tuner scores positions without building tables for every trial.
+ */
+
+public class EvalWeights {
+
+    // A man on the far half of the board, on its own back row, and anywhere else.
+    public static final int ADVANCED_MAN = 0;
+    public static final int BACK_ROW_MAN = 1;
+    public static final int MAN = 2;
+    public static final int KING = 3;
+    // Penalty per column of a piece's distance from the centre columns.
+    public static final int CENTRE = 4;
+    // Per piece, by whose turn it is and whose piece it is.
+    public static final int RED_TO_MOVE_RED = 5;
+    public static final int RED_TO_MOVE_WHITE = 6;
+    public static final int WHITE_TO_MOVE_RED = 7;
+    public static final int WHITE_TO_MOVE_WHITE = 8;
+    public static final int COUNT = 9;
+
+    public static final String[] NAMES = {
+        "advancedMan", "backRowMan", "man", "king", "centre",
+        "redToMoveRed", "redToMoveWhite", "whiteToMoveRed", "whiteToMoveWhite"
+    };
+
+    private static final int[] DEFAULTS = {80, 70, 50, 120, 2, 0, 10, 10, -10};
+    private static final String DEFAULT_FILE = "eval.weights";
+
+    private static EvalWeights defaultWeights;
+
+    private final int[] weights;
+
+    public EvalWeights(int[] weights) {
+        if (weights.length != COUNT) {
+            throw new IllegalArgumentException("Expected " + COUNT + " weights, got " + weights.length);
+        }
+        this.weights = weights.clone();
+    }
+
+    // The built-in weights.
+    public static EvalWeights getBuiltIn() {
+        return new EvalWeights(DEFAULTS);
+    }
+
+    // The weights in the "eval.weights" file of the working directory,
+    // or the built-in ones if there isn't one or it can't be read.
+    public static synchronized EvalWeights getDefault() {
+        if (defaultWeights == null) {
+            Path path = Paths.get(DEFAULT_FILE);
+            defaultWeights = getBuiltIn();
+            if (Files.exists(path)) {
+                try {
+                    defaultWeights = read(path);
+                } catch (IOException | IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return defaultWeights;
+    }
+
+    public int get(int weight) {
+        return weights[weight];
+    }
+
+    public int[] toArray() {
+        return weights.clone();
+    }
+
+    // The positional piece-square table for the board size, indexed
+    // like the ones in Evaluator. Values are from red's point of view.
+    int[][] pieceSquareTable(int size) {
+        BitBoard board = new BitBoard(size);
+        int[][] table = new int[4][64];
+        for (int y = 0; y < size; y++) {
+            for (int x = 1 - (y % 2); x < size; x += 2) {
+                int i = board.index(x, y);
+                int centre = weights[CENTRE] * centreDistance(x, size);
+                table[Zobrist.RED_MAN][i] = weights[manRow(Player.RED, y, size)] - centre;
+                table[Zobrist.RED_KING][i] = weights[KING] - centre;
+                table[Zobrist.WHITE_MAN][i] = -weights[manRow(Player.WHITE, y, size)] + centre;
+                table[Zobrist.WHITE_KING][i] = -weights[KING] + centre;
+            }
+        }
+        return table;
+    }
+
+    // The weight for each piece, by whose turn it is, from red's point of view.
+    int turnWeight(Player turn, Player player) {
+        if (turn == Player.RED) {
+            return weights[player == Player.RED ? RED_TO_MOVE_RED : RED_TO_MOVE_WHITE];
+        } else {
+            return weights[player == Player.RED ? WHITE_TO_MOVE_RED : WHITE_TO_MOVE_WHITE];
+        }
+    }
+
+    // Fills in the features of a position that isn't over, so that the
+    // positional score without noise is the sum of weight times feature.
+    public static void features(BitBoard board, int[] features) {
+        Arrays.fill(features, 0);
+        int size = board.getSize();
+        long kings = board.getKings();
+        for (Player player : Player.values()) {
+            int sign = player == Player.RED ? 1 : -1;
+            long pieces = board.getPieces(player);
+            while (pieces != 0) {
+                int i = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+                int x = board.getX(i);
+                int y = board.getY(i);
+                if ((kings & (1L << i)) != 0) {
+                    features[KING] += sign;
+                } else {
+                    features[manRow(player, y, size)] += sign;
+                }
+                features[CENTRE] -= sign * centreDistance(x, size);
+            }
+        }
+        int red = Long.bitCount(board.getPieces(Player.RED));
+        int white = Long.bitCount(board.getPieces(Player.WHITE));
+        if (board.getTurn() == Player.RED) {
+            features[RED_TO_MOVE_RED] = red;
+            features[RED_TO_MOVE_WHITE] = white;
+        } else {
+            features[WHITE_TO_MOVE_RED] = red;
+            features[WHITE_TO_MOVE_WHITE] = white;
+        }
+    }
+
+    // Which of the man weights applies to a man of the player on row y.
+    private static int manRow(Player player, int y, int size) {
+        if (player == Player.RED) {
+            return y < size / 2 ? ADVANCED_MAN : y == size - 1 ? BACK_ROW_MAN : MAN;
+        } else {
+            return y > size / 2 ? ADVANCED_MAN : y == 0 ? BACK_ROW_MAN : MAN;
+        }
+    }
+
+    private static int centreDistance(int x, int size) {
+        return Math.abs(x - (size - 1) / 2);
+    }
+
+    public static EvalWeights read(Path path) throws IOException {
+        int[] weights = DEFAULTS.clone();
+        try (BufferedReader in = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                int weight = Arrays.asList(NAMES).indexOf(parts[0]);
+                if (weight < 0 || parts.length != 2) {
+                    throw new IOException("Bad line in " + path + ": " + line);
+                }
+                weights[weight] = Integer.parseInt(parts[1]);
+            }
+        }
+        return new EvalWeights(weights);
+    }
+
+    public void write(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(path)) {
+            out.write("# Positional evaluation weights, read by ai.EvalWeights.");
+            out.newLine();
+            for (int i = 0; i < COUNT; i++) {
+                out.write(NAMES[i] + " " + weights[i]);
+                out.newLine();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < COUNT; i++) {
+            s.append(i == 0 ? "" : ", ").append(NAMES[i]).append(' ').append(weights[i]);
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,166 @@
+package ai;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import checkers.BitBoard;
+import checkers.Zobrist;
+import checkers.Board.*;
+import ai.AlphaBetaAI.StaticEval;
+
+/**
+ * The static evaluation functions used by the search agents. Scores are
+ * always from red's point of view, and include a little random noise so
+ * that bots don't play the same game every time. An Evaluator holds no
+ * mutable state, so one instance can be shared between threads.
+ */
+
+public class Evaluator {
+
+    // Piece-square tables, indexed by board size, then Zobrist piece kind,
+    // then BitBoard square index. Values are from red's point of view.
+    // The positional ones come from the weights loaded at startup.
+    private static final int[][][] BASIC_TABLES = new int[11][][];
+    private static final EvalWeights DEFAULT_WEIGHTS = EvalWeights.getDefault();
+    private static final int[][][] POSITIONAL_TABLES = positionalTables(DEFAULT_WEIGHTS);
+
+    static {
+        for (int size = 4; size <= 10; size += 2) {
+            BitBoard board = new BitBoard(size);
+            int[][] basic = new int[4][64];
+            for (int y = 0; y < size; y++) {
+                for (int x = 1 - (y % 2); x < size; x += 2) {
+                    int i = board.index(x, y);
+                    basic[Zobrist.RED_MAN][i] = 5;
+                    basic[Zobrist.RED_KING][i] = 10;
+                    basic[Zobrist.WHITE_MAN][i] = -5;
+                    basic[Zobrist.WHITE_KING][i] = -10;
+                }
+            }
+            BASIC_TABLES[size] = basic;
+        }
+    }
+
+    private StaticEval evalType;
+    private EvalWeights weights;
+    private int[][][] positionalTables;
+
+    public Evaluator(StaticEval evalType) {
+        this.evalType = evalType;
+        this.weights = DEFAULT_WEIGHTS;
+        this.positionalTables = POSITIONAL_TABLES;
+    }
+
+    // An evaluator with its own positional weights, rather than the ones loaded at startup.
+    public Evaluator(StaticEval evalType, EvalWeights weights) {
+        this.evalType = evalType;
+        this.weights = weights;
+        this.positionalTables = positionalTables(weights);
+    }
+
+    // Men are worth more the further they've advanced, and every
+    // piece is penalized for its distance from the centre columns.
+    private static int[][][] positionalTables(EvalWeights weights) {
+        int[][][] tables = new int[11][][];
+        for (int size = 4; size <= 10; size += 2) {
+            tables[size] = weights.pieceSquareTable(size);
+        }
+        return tables;
+    }
+
+    public EvalWeights getWeights() {
+        return weights;
+    }
+
+    // The table whose incrementally kept sum this evaluator reads.
+    // Searches should set it on their board before they start.
+    public int[][] getPieceSquareTable(int size) {
+        if (evalType == StaticEval.BASIC_PIECEVALUE) {
+            return BASIC_TABLES[size];
+        } else {
+            return positionalTables[size];
+        }
+    }
+
+    // The score of a won game for red; a won game for white scores the negative.
+    public int getWinScore() {
+        if (evalType == StaticEval.BASIC_PIECEVALUE) {
+            return 1000;
+        } else {
+            return 10000;
+        }
+    }
+
+    // What a man in the middle of the board is worth, as a unit for search margins.
+    public int getManValue() {
+        if (evalType == StaticEval.BASIC_PIECEVALUE) {
+            return 5;
+        } else {
+            return weights.get(EvalWeights.MAN);
+        }
+    }
+
+    public int evaluate(BitBoard board) {
+        if (evalType == StaticEval.BASIC_PIECEVALUE) {
+            return basicPieceValue(board);
+        } else {
+            return positionalPieceValue(board);
+        }
+    }
+
+    // Red is the maximizing player, and white
+    // is the minimizing player.
+    // TODO: Add more static evaluation options.
+    private int basicPieceValue(BitBoard board) {
+        if (board.isOver()) {
+            Player winner = board.findWinner();
+            if (winner == Player.RED) {
+                return 1000;
+            }  else if (winner == Player.WHITE) {
+                return -1000;
+            } else {
+                return 0;
+            }
+        }
+        return pieceSquareScore(board) + ThreadLocalRandom.current().nextInt(10) - 5;
+    }
+
+    private int positionalPieceValue(BitBoard board) {
+        int redWeight = weights.turnWeight(board.getTurn(), Player.RED);
+        int whiteWeight = weights.turnWeight(board.getTurn(), Player.WHITE);
+        int eval = 0;
+        if (board.isOver()) {
+            Player winner = board.findWinner();
+            if (winner == Player.RED) {
+                return 10000;
+            }  else if (winner == Player.WHITE) {
+                return -10000;
+            } else {
+                return 0;
+            }
+        }
+        eval += pieceSquareScore(board);
+        eval += redWeight*Long.bitCount(board.getPieces(Player.RED));
+        eval += whiteWeight*Long.bitCount(board.getPieces(Player.WHITE));
+        return eval + ThreadLocalRandom.current().nextInt(10) - 5;
+    }
+
+    // Boards that don't keep this evaluator's table up to date
+    // get their score summed up from scratch.
+    private int pieceSquareScore(BitBoard board) {
+        int[][] table = getPieceSquareTable(board.getSize());
+        if (board.getPieceSquareTable() == table) {
+            return board.getPieceSquareScore();
+        }
+        int score = 0;
+        long kings = board.getKings();
+        for (Player player : Player.values()) {
+            long pieces = board.getPieces(player);
+            while (pieces != 0) {
+                int i = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+                score += table[Zobrist.kind(player, (kings & (1L << i)) != 0)][i];
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,162 @@
+package ai;
+
+import checkers.BitBoard;
+import checkers.MoveList;
+
+/**
+ * A MovePicker hands out the moves of one search node in stages:
+ *   1. the hash move from the transposition table,
+ *   2. captures, longest chains first,
+ *   3. the killer moves of this ply,
+ *   4. the remaining quiet moves, highest history score first.
+ * Each stage is only generated once the previous ones are used up,
+ * so a cutoff early on saves generating the rest.
+ *
+ * A search keeps one MovePicker per ply and resets it at every node,
+ * so that its move buffer is only allocated once. Quiescence search
+ * resets it to hand out the captures alone.
+ */
+
+public class MovePicker {
+
+    private static final int HASH = 0;
+    private static final int CAPTURES = 1;
+    private static final int KILLERS = 2;
+    private static final int QUIETS = 3;
+    private static final int DONE = 4;
+
+    private BitBoard board;
+    private long hashMove;
+    private long[] killers;
+    private int[][] history;
+
+    private int stage;
+    private boolean capturesOnly;
+    private MoveList moves;
+    private int next;
+    private int killerIndex;
+
+    public MovePicker() {
+        this.moves = new MoveList();
+    }
+
+    public void reset(BitBoard board, long hashMove, long[] killers, int[][] history) {
+        this.board = board;
+        this.hashMove = hashMove;
+        this.killers = killers;
+        this.history = history;
+        this.stage = HASH;
+        this.capturesOnly = false;
+        this.moves.clear();
+        this.next = 0;
+        this.killerIndex = 0;
+    }
+
+    public void resetCaptures(BitBoard board) {
+        this.board = board;
+        this.hashMove = 0;
+        this.stage = CAPTURES;
+        this.capturesOnly = true;
+        this.moves.clear();
+        this.next = 0;
+    }
+
+    // Whether the last move handed out was an ordinary quiet move:
+    // not the hash move, a capture or a killer.
+    public boolean isLateQuiet() {
+        return stage == QUIETS;
+    }
+
+    // Returns the next move to search, or 0 when there are none left.
+    public long next() {
+        while (true) {
+            if (stage == HASH) {
+                stage = CAPTURES;
+                if (hashMove != 0 && board.isLegal(hashMove)) {
+                    return hashMove;
+                }
+                hashMove = 0;
+            } else if (stage == CAPTURES) {
+                if (next == 0 && moves.size() == 0) {
+                    board.getCaptureMoves(moves);
+                    sortByChainLength();
+                }
+                while (next < moves.size()) {
+                    long m = moves.get(next++);
+                    if (m != hashMove) {
+                        return m;
+                    }
+                }
+                stage = capturesOnly ? DONE : KILLERS;
+            } else if (stage == KILLERS) {
+                while (killerIndex < killers.length) {
+                    long m = killers[killerIndex++];
+                    if (m != 0 && m != hashMove && board.isLegal(m)) {
+                        return m;
+                    }
+                }
+                stage = QUIETS;
+                moves.clear();
+                next = 0;
+                board.getQuietMoves(moves);
+            } else if (stage == QUIETS) {
+                long m = pickBestQuiet();
+                if (m == 0) {
+                    stage = DONE;
+                } else if (m != hashMove && !isKiller(m)) {
+                    return m;
+                }
+            } else {
+                return 0;
+            }
+        }
+    }
+
+    private void sortByChainLength() {
+        for (int i = 1; i < moves.size(); i++) {
+            long m = moves.get(i);
+            int length = Long.bitCount(m >>> 12);
+            int j = i - 1;
+            while (j >= 0 && Long.bitCount(moves.get(j) >>> 12) < length) {
+                moves.set(j + 1, moves.get(j));
+                j--;
+            }
+            moves.set(j + 1, m);
+        }
+    }
+
+    // Selection sort, one step at a time, so that a cutoff
+    // leaves the rest of the quiet moves unsorted.
+    private long pickBestQuiet() {
+        if (next >= moves.size()) {
+            return 0;
+        }
+        int best = next;
+        int bestScore = score(moves.get(next));
+        for (int i = next + 1; i < moves.size(); i++) {
+            int s = score(moves.get(i));
+            if (s > bestScore) {
+                best = i;
+                bestScore = s;
+            }
+        }
+        long m = moves.get(best);
+        moves.set(best, moves.get(next));
+        moves.set(next, m);
+        next++;
+        return m;
+    }
+
+    private int score(long move) {
+        return history[BitBoard.getOrigin(move)][BitBoard.getDestination(move)];
+    }
+
+    private boolean isKiller(long move) {
+        for (long k : killers) {
+            if (k == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
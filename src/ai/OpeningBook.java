@@ -0,0 +1,156 @@
+package ai;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import checkers.BitBoard;
+
+/**
+ * An opening book: the move to play in each of a set of early positions,
+ * built offline by tools.BookBuilder. There is one file per board size,
+ * root/size.book, holding a header and then one entry per position: its
+ * Zobrist key and its packed BitBoard move, sorted by key. The Zobrist
+ * keys are fixed, so book files stay valid from one run to the next.
+ *
+ * Files are memory-mapped read-only and searched in place, so a lookup
+ * neither reads the file into memory nor allocates anything.
+ */
+
+public class OpeningBook {
+
+    private static final int MAGIC = 0x434B4F42;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 17;
+    private static final int ENTRY_BYTES = 16;
+    private static final String DEFAULT_DIRECTORY = "book";
+
+    private static OpeningBook defaultBook;
+    private static boolean defaultOpened;
+
+    private Path root;
+    // The mapped book of each board size, null until it's first looked up.
+    private BookFile[] bySize = new BookFile[11];
+
+    public OpeningBook(Path root) {
+        this.root = root;
+    }
+
+    // The book in the "book" directory of the working directory,
+    // shared by every agent, or null if there isn't one.
+    public static synchronized OpeningBook getDefault() {
+        if (!defaultOpened) {
+            defaultOpened = true;
+            Path path = Paths.get(DEFAULT_DIRECTORY);
+            if (Files.isDirectory(path)) {
+                defaultBook = new OpeningBook(path);
+            }
+        }
+        return defaultBook;
+    }
+
+    // The book move for the position, or 0 if it isn't in the book.
+    public long lookup(BitBoard board) {
+        BookFile file = file(board.getSize());
+        if (file.entries == 0 || file.maximalCapturesOnly != board.isMaximalCapturesOnly()) {
+            return 0;
+        }
+        long key = board.getHash();
+        int low = 0;
+        int high = file.entries - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long k = file.buffer.getLong(HEADER_BYTES + mid * ENTRY_BYTES);
+            if (k < key) {
+                low = mid + 1;
+            } else if (k > key) {
+                high = mid - 1;
+            } else {
+                long move = file.buffer.getLong(HEADER_BYTES + mid * ENTRY_BYTES + 8);
+                // Another position could share the key, however unlikely.
+                return board.isLegal(move) ? move : 0;
+            }
+        }
+        return 0;
+    }
+
+    // Number of positions in the book for the board size.
+    public int getEntries(int size) {
+        return file(size).entries;
+    }
+
+    private BookFile file(int size) {
+        BookFile file = bySize[size];
+        return file != null ? file : load(size);
+    }
+
+    private synchronized BookFile load(int size) {
+        if (bySize[size] == null) {
+            Path path = root.resolve(size + ".book");
+            BookFile file = null;
+            if (Files.exists(path)) {
+                try {
+                    file = new BookFile(path);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            bySize[size] = file != null ? file : new BookFile();
+        }
+        return bySize[size];
+    }
+
+    // Writes a book. The keys must be distinct and sorted in ascending order.
+    public static void write(Path path, int size, boolean maximalCapturesOnly,
+                             long[] keys, long[] moves) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeBoolean(maximalCapturesOnly);
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                out.writeLong(keys[i]);
+                out.writeLong(moves[i]);
+            }
+        }
+    }
+
+    // Final fields, so that a thread that sees the object sees it filled in.
+    private static class BookFile {
+
+        private final MappedByteBuffer buffer;
+        private final boolean maximalCapturesOnly;
+        private final int entries;
+
+        // An empty book, for sizes that don't have a file.
+        BookFile() {
+            this.buffer = null;
+            this.maximalCapturesOnly = false;
+            this.entries = 0;
+        }
+
+        BookFile(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not an opening book file: " + path);
+            }
+            this.maximalCapturesOnly = buffer.get(12) != 0;
+            this.entries = buffer.getInt(13);
+            if (buffer.capacity() < HEADER_BYTES + (long) entries * ENTRY_BYTES) {
+                throw new IOException("Opening book file is truncated: " + path);
+            }
+        }
+    }
+}
@@ -1,12 +1,11 @@
 package ai;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 
+import checkers.BitBoard;
 import checkers.Board;
 import checkers.Move;
-import checkers.Square;
+import checkers.MoveList;
 
 public class RandomAI implements Agent {
 
@@ -18,11 +17,13 @@ public class RandomAI implements Agent {
 
     @Override
     public Move chooseMove(Board board) {
-        List<Move> legalMoves = board.getAllLegalMoves(board.getTurn());
+        BitBoard position = new BitBoard(board);
+        MoveList legalMoves = new MoveList();
+        position.getLegalMoves(legalMoves);
         if (legalMoves.size() > 1) {
-            return legalMoves.get(random.nextInt(legalMoves.size()-1));
+            return position.toMove(board, legalMoves.get(random.nextInt(legalMoves.size()-1)));
         } else {
-            return legalMoves.get(0);
+            return position.toMove(board, legalMoves.get(0));
         }
     }
 
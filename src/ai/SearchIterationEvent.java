@@ -0,0 +1,34 @@
+package ai;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for one iteration of an AlphaBetaAI search,
+ * spanning the iteration from its first root move to its last.
+ */
+
+@Name("checkers.SearchIteration")
+@Label("Search Iteration")
+@Category({"Checkers", "Search"})
+@Description("One iteration of iterative deepening")
+class SearchIterationEvent extends Event {
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Score")
+    int score;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Cutoffs")
+    long cutoffs;
+
+    @Label("Aspiration Re-searches")
+    int researches;
+}
@@ -0,0 +1,7 @@
+package ai;
+
+// Told about a search's progress as it happens. Listeners are called on
+// the searching thread, so they should return quickly.
+public interface SearchListener {
+    void iterationFinished(SearchStats stats);
+}
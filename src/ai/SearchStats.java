@@ -0,0 +1,114 @@
+package ai;
+
+/**
+ * What one AlphaBetaAI search did: how deep it got, how many positions it
+ * looked at, how well its move ordering worked, and how long it took.
+ * A SearchStats is handed to listeners after every finished iteration,
+ * and the one for the whole move is kept by the agent afterwards.
+ */
+
+public class SearchStats {
+
+    // How the move was found.
+    public enum Source {
+        SEARCH, BOOK, TABLEBASE, FORCED;
+    }
+
+    private final Source source;
+    private final int depth;
+    private final int score;
+    private final long nodes;
+    private final long cutoffs;
+    private final long firstMoveCutoffs;
+    private final long tableHits;
+    private final long tableProbes;
+    private final long elapsedNanos;
+    private final long budgetNanos;
+    private final int threads;
+
+    SearchStats(Source source, int depth, int score, long nodes, long cutoffs, long firstMoveCutoffs,
+                long tableHits, long tableProbes, long elapsedNanos, long budgetNanos, int threads) {
+        this.source = source;
+        this.depth = depth;
+        this.score = score;
+        this.nodes = nodes;
+        this.cutoffs = cutoffs;
+        this.firstMoveCutoffs = firstMoveCutoffs;
+        this.tableHits = tableHits;
+        this.tableProbes = tableProbes;
+        this.elapsedNanos = elapsedNanos;
+        this.budgetNanos = budgetNanos;
+        this.threads = threads;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    // Deepest iteration that was finished; the root move counts as one ply.
+    public int getDepth() {
+        return depth;
+    }
+
+    // From red's point of view.
+    public int getScore() {
+        return score;
+    }
+
+    // Positions searched by every thread together.
+    public long getNodes() {
+        return nodes;
+    }
+
+    // Cutoffs found by the calling thread.
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    // Fraction of cutoffs that came from the first move searched.
+    // The closer to 1, the better the move ordering.
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    public double getTableHitRate() {
+        return tableProbes == 0 ? 0 : (double) tableHits / tableProbes;
+    }
+
+    // The branching factor a uniform tree of this depth would need to
+    // have this many nodes.
+    public double getBranchingFactor() {
+        return depth == 0 || nodes == 0 ? 0 : Math.pow(nodes, 1.0 / depth);
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    // The time limit of a timed search, or 0 for a search to a fixed depth.
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    public double getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public String toString() {
+        if (source != Source.SEARCH) {
+            return String.format("%s move%ntime %.3fs", source.toString().toLowerCase(), elapsedNanos / 1e9);
+        }
+        String time = budgetNanos > 0 ?
+                String.format("time %.2fs of %.2fs", elapsedNanos / 1e9, budgetNanos / 1e9) :
+                String.format("time %.2fs", elapsedNanos / 1e9);
+        return String.format("depth %d  score %d%nnodes %,d  (%,.0f/s, %d thread%s)%n" +
+                        "branching %.2f  first-move cutoffs %.0f%%%ntable hits %.0f%%  %s",
+                depth, score, nodes, getNodesPerSecond(), threads, threads == 1 ? "" : "s",
+                getBranchingFactor(), 100 * getFirstMoveCutoffRate(), 100 * getTableHitRate(), time);
+    }
+}
@@ -0,0 +1,369 @@
+package ai;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import checkers.BitBoard;
+import checkers.Board.*;
+
+/**
+ * An endgame tablebase: for every position with few enough pieces, whether
+ * the side to move wins, loses or draws with best play, and in how many
+ * plies. The tables are built offline by tools.TablebaseGenerator.
+ *
+ * Each slice (see TablebaseSlice) is one file under root/size/. A file is
+ * a header followed by blocks of BLOCK_ENTRIES values, each compressed on
+ * its own with Deflater, so a probe only has to inflate one block. Files
+ * are memory-mapped read-only, and recently used blocks are kept inflated
+ * in a small cache shared by every thread probing this tablebase. The
+ * cache is split into stripes with a lock each, held only to look a block
+ * up or to store one; blocks are inflated outside any lock, so a miss
+ * only holds up the thread that had it.
+ *
+ * Each value is one byte, from the side to move's point of view:
+ *   0        draw, or a position that can't come up in a game
+ *   1-127    win in that many plies
+ *   128-255  loss in (value - 128) plies
+ * Distances longer than 127 plies can't be stored, and rather than make
+ * longer wins look alike, the generator refuses to build such a slice.
+ */
+
+public class Tablebase {
+
+    public static final int UNKNOWN = -1;
+    public static final int DRAW = 0;
+    public static final int MAX_DISTANCE = 127;
+    private static final int LOSS = 128;
+
+    private static final int MAGIC = 0x434B5442;
+    private static final int VERSION = 1;
+    private static final int BLOCK_ENTRIES = 1 << 16;
+    private static final String DEFAULT_DIRECTORY = "tablebase";
+    // A power of two.
+    private static final int CACHE_STRIPES = 16;
+
+    private static Tablebase defaultTablebase;
+    private static boolean defaultOpened;
+
+    private Path root;
+    // The mapped slices of each board size, null until it's first probed.
+    private SizeFiles[] bySize = new SizeFiles[11];
+    private int nextFileId;
+    private CacheStripe[] cache = new CacheStripe[CACHE_STRIPES];
+
+    public Tablebase(Path root, int cacheBlocks) {
+        this.root = root;
+        for (int i = 0; i < CACHE_STRIPES; i++) {
+            cache[i] = new CacheStripe(Math.max(1, cacheBlocks / CACHE_STRIPES));
+        }
+    }
+
+    // The tablebase in the "tablebase" directory of the working directory,
+    // shared by every agent, or null if there isn't one.
+    public static synchronized Tablebase getDefault() {
+        if (!defaultOpened) {
+            defaultOpened = true;
+            Path path = Paths.get(DEFAULT_DIRECTORY);
+            if (Files.isDirectory(path)) {
+                defaultTablebase = new Tablebase(path, 64);
+            }
+        }
+        return defaultTablebase;
+    }
+
+    public static boolean isWin(int value) {
+        return value > DRAW && value < LOSS;
+    }
+
+    public static boolean isLoss(int value) {
+        return value >= LOSS;
+    }
+
+    public static int getDistance(int value) {
+        return isLoss(value) ? value - LOSS : value;
+    }
+
+    public static int win(int distance) {
+        return checkDistance(distance);
+    }
+
+    public static int loss(int distance) {
+        return LOSS + checkDistance(distance);
+    }
+
+    private static int checkDistance(int distance) {
+        if (distance < 0 || distance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("Distance " + distance + " doesn't fit in a tablebase value.");
+        }
+        return distance;
+    }
+
+    // Most pieces in any slice there is for this board size.
+    public int getMaxPieces(int size) {
+        return files(size).maxPieces;
+    }
+
+    // The value of the position, or UNKNOWN if it isn't in the tablebase.
+    // Positions where one side has no pieces left are never in it.
+    public int probe(BitBoard board) {
+        int size = board.getSize();
+        long red = board.getPieces(Player.RED);
+        long white = board.getPieces(Player.WHITE);
+        SizeFiles sizeFiles = files(size);
+        if (red == 0 || white == 0 || Long.bitCount(red | white) > sizeFiles.maxPieces) {
+            return UNKNOWN;
+        }
+        long kings = board.getKings();
+        SliceFile file = sizeFiles.slices[key(Long.bitCount(red & ~kings), Long.bitCount(red & kings),
+                Long.bitCount(white & ~kings), Long.bitCount(white & kings))];
+        if (file == null || file.maximalCapturesOnly != board.isMaximalCapturesOnly()) {
+            return UNKNOWN;
+        }
+        long index = file.slice.index(board);
+        byte[] block = getBlock(file, (int) (index / file.blockEntries));
+        return block[(int) (index % file.blockEntries)] & 0xFF;
+    }
+
+    private static int key(int redMen, int redKings, int whiteMen, int whiteKings) {
+        return ((redMen * 16 + redKings) * 16 + whiteMen) * 16 + whiteKings;
+    }
+
+    private SizeFiles files(int size) {
+        SizeFiles files = bySize[size];
+        return files != null ? files : load(size);
+    }
+
+    // Maps every slice file there is for the board size, the first time it's probed.
+    private synchronized SizeFiles load(int size) {
+        if (bySize[size] != null) {
+            return bySize[size];
+        }
+        SliceFile[] slices = new SliceFile[1 << 16];
+        int maxPieces = 0;
+        Path directory = root.resolve(Integer.toString(size));
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*.tb")) {
+                for (Path path : paths) {
+                    SliceFile file = new SliceFile(path, nextFileId++);
+                    TablebaseSlice s = file.slice;
+                    if (s.getBoardSize() == size && Math.max(Math.max(s.getRedMen(), s.getRedKings()),
+                            Math.max(s.getWhiteMen(), s.getWhiteKings())) < 16) {
+                        slices[key(s.getRedMen(), s.getRedKings(), s.getWhiteMen(), s.getWhiteKings())] = file;
+                        maxPieces = Math.max(maxPieces, s.getPieceCount());
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        bySize[size] = new SizeFiles(slices, maxPieces);
+        return bySize[size];
+    }
+
+    // Two threads missing the same block at once both inflate it, which
+    // is cheaper than making either of them wait for the other.
+    private byte[] getBlock(SliceFile file, int block) {
+        long cacheKey = ((long) file.id << 32) | block;
+        CacheStripe stripe = cache[(int) ((cacheKey * 0x9E3779B97F4A7C15L) >>> 32) & (CACHE_STRIPES - 1)];
+        byte[] values = stripe.get(cacheKey);
+        if (values == null) {
+            values = file.inflate(block);
+            stripe.put(cacheKey, values);
+        }
+        return values;
+    }
+
+    // Writes a whole slice, one value per index.
+    public static void write(Path path, TablebaseSlice slice, boolean maximalCapturesOnly,
+                             byte[] values) throws IOException {
+        int blocks = (int) ((slice.getEntries() + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES);
+        List<byte[]> compressed = new ArrayList<>();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        byte[] buffer = new byte[BLOCK_ENTRIES + 1024];
+        for (int b = 0; b < blocks; b++) {
+            int start = b * BLOCK_ENTRIES;
+            int length = (int) Math.min(BLOCK_ENTRIES, slice.getEntries() - start);
+            deflater.reset();
+            deflater.setInput(values, start, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            compressed.add(out.toByteArray());
+        }
+        deflater.end();
+
+        Files.createDirectories(path.getParent());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(slice.getBoardSize());
+            out.writeInt(slice.getRedMen());
+            out.writeInt(slice.getRedKings());
+            out.writeInt(slice.getWhiteMen());
+            out.writeInt(slice.getWhiteKings());
+            out.writeBoolean(maximalCapturesOnly);
+            out.writeLong(slice.getEntries());
+            out.writeInt(BLOCK_ENTRIES);
+            out.writeInt(blocks);
+            long offset = 0;
+            for (byte[] block : compressed) {
+                out.writeLong(offset);
+                offset += block.length;
+            }
+            out.writeLong(offset);
+            for (byte[] block : compressed) {
+                out.write(block);
+            }
+        }
+    }
+
+    // Reads a whole slice back, for building the slices that depend on it.
+    public static byte[] read(Path path, boolean maximalCapturesOnly) throws IOException {
+        SliceFile file = new SliceFile(path, 0);
+        if (file.maximalCapturesOnly != maximalCapturesOnly) {
+            throw new IOException("Tablebase file was built for other capture rules: " + path);
+        }
+        byte[] values = new byte[(int) file.slice.getEntries()];
+        for (int b = 0; b < file.offsets.length - 1; b++) {
+            byte[] block = file.inflate(b);
+            System.arraycopy(block, 0, values, b * file.blockEntries, block.length);
+        }
+        return values;
+    }
+
+    // A few inflated blocks, the least recently used of which is replaced.
+    private static class CacheStripe {
+
+        private final long[] keys;
+        private final byte[][] blocks;
+        // When each block was last used, 0 for an empty slot.
+        private final long[] used;
+        private long clock;
+
+        CacheStripe(int size) {
+            keys = new long[size];
+            blocks = new byte[size][];
+            used = new long[size];
+        }
+
+        synchronized byte[] get(long key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (used[i] != 0 && keys[i] == key) {
+                    used[i] = ++clock;
+                    return blocks[i];
+                }
+            }
+            return null;
+        }
+
+        synchronized void put(long key, byte[] block) {
+            int victim = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (used[i] != 0 && keys[i] == key) {
+                    victim = i;
+                    break;
+                }
+                if (used[i] < used[victim]) {
+                    victim = i;
+                }
+            }
+            keys[victim] = key;
+            blocks[victim] = block;
+            used[victim] = ++clock;
+        }
+    }
+
+    // Final fields, so that a thread that sees the object sees it filled in.
+    private static class SizeFiles {
+
+        private final SliceFile[] slices;
+        private final int maxPieces;
+
+        SizeFiles(SliceFile[] slices, int maxPieces) {
+            this.slices = slices;
+            this.maxPieces = maxPieces;
+        }
+    }
+
+    private static class SliceFile {
+
+        private final int id;
+        private final TablebaseSlice slice;
+        private final boolean maximalCapturesOnly;
+        private final int blockEntries;
+        private final long[] offsets;
+        private final MappedByteBuffer buffer;
+        private final int dataStart;
+
+        SliceFile(Path path, int id) throws IOException {
+            this.id = id;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a tablebase file: " + path);
+            }
+            int size = buffer.getInt();
+            int redMen = buffer.getInt();
+            int redKings = buffer.getInt();
+            int whiteMen = buffer.getInt();
+            int whiteKings = buffer.getInt();
+            this.slice = new TablebaseSlice(size, redMen, redKings, whiteMen, whiteKings);
+            this.maximalCapturesOnly = buffer.get() != 0;
+            if (buffer.getLong() != slice.getEntries()) {
+                throw new IOException("Tablebase file doesn't match its slice: " + path);
+            }
+            this.blockEntries = buffer.getInt();
+            this.offsets = new long[buffer.getInt() + 1];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = buffer.getLong();
+            }
+            this.dataStart = buffer.position();
+        }
+
+        byte[] inflate(int block) {
+            ByteBuffer data = buffer.duplicate();
+            data.position(dataStart + (int) offsets[block]);
+            byte[] compressed = new byte[(int) (offsets[block + 1] - offsets[block])];
+            data.get(compressed);
+            int length = (int) Math.min(blockEntries, slice.getEntries() - (long) block * blockEntries);
+            byte[] values = new byte[length];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int n = 0;
+                while (n < length && !inflater.finished()) {
+                    int inflated = inflater.inflate(values, n, length - n);
+                    // A truncated block would otherwise keep asking for more input.
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IllegalStateException("Corrupt tablebase block");
+                    }
+                    n += inflated;
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupt tablebase block", e);
+            } finally {
+                inflater.end();
+            }
+            return values;
+        }
+    }
+}
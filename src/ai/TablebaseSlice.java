@@ -0,0 +1,218 @@
+package ai;
+
+import java.util.Arrays;
+
+import checkers.BitBoard;
+import checkers.Board.*;
+
+/**
+ * One slice of an endgame tablebase: every position with a given number
+ * of red men, red kings, white men and white kings on a given board size.
+ *
+ * Positions are numbered by a combinatorial index. The red men are placed
+ * first, then the white men on the squares left over, then the red kings,
+ * then the white kings; each group is numbered by the combinations of its
+ * squares among the free ones. The last bit of the index is the side to
+ * move. Every index stands for a distinct placement, but indices that put
+ * a man on its own promotion row can't come up in a game and are skipped.
+ */
+
+public class TablebaseSlice {
+
+    // Largest number of dark squares, on a 10x10 board.
+    private static final int MAX_SQUARES = 50;
+    private static final long[][] BINOMIALS = new long[MAX_SQUARES + 1][MAX_SQUARES + 1];
+
+    static {
+        for (int n = 0; n <= MAX_SQUARES; n++) {
+            BINOMIALS[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                BINOMIALS[n][k] = BINOMIALS[n-1][k-1] + BINOMIALS[n-1][k];
+            }
+        }
+    }
+
+    private int boardSize;
+    private int squares;
+    // Piece counts in index order: red men, white men, red kings, white kings.
+    private int[] counts;
+    private long[] groupSizes;
+    private long entries;
+
+    public TablebaseSlice(int boardSize, int redMen, int redKings, int whiteMen, int whiteKings) {
+        this.boardSize = boardSize;
+        this.squares = boardSize * boardSize / 2;
+        this.counts = new int[]{redMen, whiteMen, redKings, whiteKings};
+        if (redMen + redKings + whiteMen + whiteKings > squares) {
+            throw new IllegalArgumentException("Too many pieces for the board.");
+        }
+        this.groupSizes = new long[4];
+        int free = squares;
+        long product = 2;
+        for (int g = 0; g < 4; g++) {
+            groupSizes[g] = binomial(free, counts[g]);
+            product *= groupSizes[g];
+            free -= counts[g];
+        }
+        this.entries = product;
+    }
+
+    // The slice the given position belongs to.
+    public static TablebaseSlice of(BitBoard board) {
+        long kings = board.getKings();
+        long red = board.getPieces(Player.RED);
+        long white = board.getPieces(Player.WHITE);
+        return new TablebaseSlice(board.getSize(), Long.bitCount(red & ~kings), Long.bitCount(red & kings),
+                Long.bitCount(white & ~kings), Long.bitCount(white & kings));
+    }
+
+    static long binomial(int n, int k) {
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        return BINOMIALS[n][k];
+    }
+
+    // Index of the position, which must belong to this slice.
+    public long index(BitBoard board) {
+        long kings = board.getKings();
+        long red = board.getPieces(Player.RED);
+        long white = board.getPieces(Player.WHITE);
+        long[] groups = {red & ~kings, white & ~kings, red & kings, white & kings};
+        long occupied = 0;
+        long index = 0;
+        for (int g = 0; g < 4; g++) {
+            long group = compact(groups[g]);
+            long rank = 0;
+            int i = 1;
+            for (long bits = group; bits != 0; bits &= bits - 1) {
+                int c = Long.numberOfTrailingZeros(bits);
+                int free = c - Long.bitCount(occupied & ((1L << c) - 1));
+                rank += binomial(free, i++);
+            }
+            occupied |= group;
+            index = index * groupSizes[g] + rank;
+        }
+        return 2 * index + (board.getTurn() == Player.RED ? 0 : 1);
+    }
+
+    // Sets the board to the position with the given index. Returns false,
+    // leaving the board untouched, if the position can't come up in a game.
+    public boolean setPosition(BitBoard board, long index) {
+        Player turn = (index & 1) == 0 ? Player.RED : Player.WHITE;
+        long rest = index >>> 1;
+        long[] ranks = new long[4];
+        for (int g = 3; g >= 0; g--) {
+            ranks[g] = rest % groupSizes[g];
+            rest /= groupSizes[g];
+        }
+
+        long occupied = 0;
+        long[] groups = new long[4];
+        for (int g = 0; g < 4; g++) {
+            long rank = ranks[g];
+            int free = squares - Long.bitCount(occupied);
+            for (int i = counts[g]; i > 0; i--) {
+                // Largest relative square r with C(r, i) <= rank.
+                int r = i - 1;
+                while (r + 1 < free && binomial(r + 1, i) <= rank) {
+                    r++;
+                }
+                rank -= binomial(r, i);
+                groups[g] |= 1L << nthFree(occupied, r);
+            }
+            occupied |= groups[g];
+        }
+
+        // Men can't stand on the row where they would have been crowned.
+        long lastRow = (1L << boardSize/2) - 1;
+        if ((groups[0] & lastRow) != 0 || (groups[1] & (lastRow << (squares - boardSize/2))) != 0) {
+            return false;
+        }
+        long red = expand(groups[0] | groups[2]);
+        long white = expand(groups[1] | groups[3]);
+        long kings = expand(groups[2] | groups[3]);
+        board.setPosition(red, white, kings, turn);
+        return true;
+    }
+
+    private static int nthFree(long occupied, int n) {
+        int c = 0;
+        while (true) {
+            if ((occupied & (1L << c)) == 0) {
+                if (n == 0) {
+                    return c;
+                }
+                n--;
+            }
+            c++;
+        }
+    }
+
+    // BitBoard masks have a ghost bit after every pair of rows;
+    // indices here number the dark squares without gaps.
+    private long compact(long mask) {
+        long out = 0;
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            int i = Long.numberOfTrailingZeros(bits);
+            out |= 1L << (i - i/(boardSize + 1));
+        }
+        return out;
+    }
+
+    private long expand(long mask) {
+        long out = 0;
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            int c = Long.numberOfTrailingZeros(bits);
+            out |= 1L << (c + c/boardSize);
+        }
+        return out;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    public int getPieceCount() {
+        return counts[0] + counts[1] + counts[2] + counts[3];
+    }
+
+    public int getRedMen() {
+        return counts[0];
+    }
+
+    public int getWhiteMen() {
+        return counts[1];
+    }
+
+    public int getRedKings() {
+        return counts[2];
+    }
+
+    public int getWhiteKings() {
+        return counts[3];
+    }
+
+    // Slices are stored one per file, named by their piece counts.
+    public String getFileName() {
+        return "r" + counts[0] + "-" + counts[2] + "_w" + counts[1] + "-" + counts[3] + ".tb";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TablebaseSlice)) {
+            return false;
+        }
+        TablebaseSlice other = (TablebaseSlice) o;
+        return boardSize == other.boardSize && Arrays.equals(counts, other.counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return boardSize * 31 + Arrays.hashCode(counts);
+    }
+}
@@ -0,0 +1,128 @@
+package ai;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size transposition table keyed by BitBoard Zobrist hashes.
+ * The table is made of two-entry buckets: the first entry keeps the
+ * deepest search seen for its slot, and the second is always replaced.
+ *
+ * The table can be shared by several search threads without locks.
+ * A writer may be interrupted halfway through an entry, so the key is
+ * stored XORed with the other two words of the entry; a torn entry
+ * then no longer matches its key and reads as a miss.
+ *
+ * Each entry is three longs: the checked key, the packed best move,
+ * and a packed data word:
+ *   bits  0-15  score
+ *   bits 16-23  depth
+ *   bits 24-25  bound
+ *   bit  26     set for every stored entry
+ */
+
+public class TranspositionTable {
+
+    public enum Bound {
+        EXACT, LOWER, UPPER;
+    }
+
+    private static final Bound[] BOUNDS = Bound.values();
+    private static final long STORED = 1L << 26;
+    private static final int ENTRY_BYTES = 24;
+
+    private long[] keys;
+    private long[] data;
+    private long[] moves;
+    private int bucketMask;
+
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+    private LongAdder collisions = new LongAdder();
+
+    public TranspositionTable(int megabytes) {
+        long entries = Math.max(2, ((long) megabytes << 20) / ENTRY_BYTES);
+        // Round down to a power of two buckets, so the index is a mask.
+        int buckets = Integer.highestOneBit((int) Math.min(entries / 2, 1 << 28));
+        this.keys = new long[2 * buckets];
+        this.data = new long[2 * buckets];
+        this.moves = new long[2 * buckets];
+        this.bucketMask = buckets - 1;
+    }
+
+    // Looks the position up. On a hit, fills entry with the data word
+    // and the best move, and returns true.
+    public boolean probe(long key, long[] entry) {
+        int i = 2 * (int) (key & bucketMask);
+        for (int j = i; j < i + 2; j++) {
+            long d = data[j];
+            long m = moves[j];
+            if (d != 0 && (keys[j] ^ d ^ m) == key) {
+                hits.increment();
+                entry[0] = d;
+                entry[1] = m;
+                return true;
+            }
+        }
+        if (data[i] != 0 || data[i + 1] != 0) {
+            collisions.increment();
+        } else {
+            misses.increment();
+        }
+        return false;
+    }
+
+    public void store(long key, int depth, Bound bound, int score, long move) {
+        long entry = STORED | ((long) bound.ordinal() << 24) | ((long) (depth & 0xFF) << 16) |
+                (score & 0xFFFF);
+        int i = 2 * (int) (key & bucketMask);
+        // Depth-preferred slot: replace it if it holds the same position
+        // or a shallower search, otherwise fall back to the second slot.
+        long d = data[i];
+        if (d == 0 || (keys[i] ^ d ^ moves[i]) == key || getDepth(d) <= depth) {
+            data[i] = entry;
+            moves[i] = move;
+            keys[i] = key ^ entry ^ move;
+        } else {
+            data[i + 1] = entry;
+            moves[i + 1] = move;
+            keys[i + 1] = key ^ entry ^ move;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+        Arrays.fill(moves, 0);
+    }
+
+    public static int getScore(long entry) {
+        return (short) entry;
+    }
+
+    public static int getDepth(long entry) {
+        return (int) ((entry >>> 16) & 0xFF);
+    }
+
+    public static Bound getBound(long entry) {
+        return BOUNDS[(int) ((entry >>> 24) & 0x3)];
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getCollisions() {
+        return collisions.sum();
+    }
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        collisions.reset();
+    }
+}
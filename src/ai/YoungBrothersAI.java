@@ -0,0 +1,300 @@
+package ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import checkers.BitBoard;
+import checkers.Board;
+import checkers.Board.*;
+import checkers.Move;
+import checkers.MoveList;
+import ai.AlphaBetaAI.StaticEval;
+
+/**
+ * A fixed-depth alpha-beta agent that searches in parallel using the
+ * Young Brothers Wait Concept. At every node, the eldest child is searched
+ * on its own first. Only once it has set a bound are its younger brothers
+ * searched in parallel, on a ForkJoinPool. They share one alpha bound that
+ * is tightened atomically as their results come in, and they are all
+ * cancelled as soon as one of them causes a cutoff.
+ *
+ * Unlike the Lazy SMP mode of AlphaBetaAI, every thread works on a
+ * different part of the same tree, and the tree is split the same way on
+ * every run. The moves chosen still vary from run to run: the evaluators
+ * add random noise to every leaf, and how far the shared alpha has come
+ * when a brother starts decides which leaves get evaluated at all.
+ *
+ * Each agent has a pool of worker threads of its own, which close()
+ * shuts down once the agent is no longer needed.
+ */
+
+public class YoungBrothersAI implements Agent, AutoCloseable {
+
+    // Scores are negamax scores, from the point of view of the side to move.
+    private static final int INFINITY = 1000000;
+    // Nodes closer to the leaves than this are searched sequentially,
+    // because a task there costs more than it saves.
+    private static final int MIN_SPLIT_DEPTH = 3;
+
+    private int depth;
+    private StaticEval evalType;
+    private Evaluator evaluator;
+    private ForkJoinPool pool;
+    private LongAdder nodes;
+
+    public YoungBrothersAI(int depth, StaticEval evalType, int threads) {
+        this.depth = depth;
+        this.evalType = evalType;
+        this.evaluator = new Evaluator(evalType);
+        this.pool = new ForkJoinPool(threads);
+        this.nodes = new LongAdder();
+    }
+
+    // Like AlphaBetaAI, the root move plus depth more plies are searched.
+    @Override
+    public Move chooseMove(Board board) {
+        return chooseMove(board, new CancellationToken(), NO_DEADLINE);
+    }
+
+    // A search that's stopped early plays the best root move whose search
+    // finished, or else the first one.
+    @Override
+    public Move chooseMove(Board board, CancellationToken token, long deadline) {
+        BitBoard position = new BitBoard(board);
+        position.setPieceSquareTable(evaluator.getPieceSquareTable(position.getSize()));
+        MoveList rootMoves = orderedMoves(position);
+        if (rootMoves.size() == 1) {
+            return position.toMove(board, rootMoves.get(0));
+        }
+
+        Cancellation root = new Cancellation(deadline);
+        Runnable cancel = root::cancel;
+        token.onCancel(cancel);
+        long bestMove;
+        try {
+            bestMove = pool.invoke(new RecursiveTask<Long>() {
+                @Override
+                protected Long compute() {
+                    return searchRoot(position, rootMoves, root);
+                }
+            });
+        } finally {
+            token.removeOnCancel(cancel);
+        }
+        return position.toMove(board, bestMove);
+    }
+
+    // Runs inside the pool, so that split points below it fork into the pool too.
+    private long searchRoot(BitBoard position, MoveList rootMoves, Cancellation root) {
+        // The eldest brother is searched alone, with a full window.
+        long eldest = rootMoves.get(0);
+        long undo = position.applyMove(eldest);
+        int eldestScore = -search(position, depth, -INFINITY, INFINITY, root);
+        position.undoMove(eldest, undo);
+        if (root.isCancelled()) {
+            return eldest;
+        }
+
+        AtomicInteger alpha = new AtomicInteger(eldestScore);
+        List<BrotherTask> brothers = new ArrayList<>();
+        for (int i = 1; i < rootMoves.size(); i++) {
+            brothers.add(new BrotherTask(position, rootMoves.get(i), depth, alpha, INFINITY, root));
+        }
+        ForkJoinTask.invokeAll(brothers);
+
+        // A brother's score is only exact if it beat the bound it was
+        // searched with; otherwise it's an upper bound and can't be best.
+        long bestMove = eldest;
+        int bestScore = eldestScore;
+        for (BrotherTask b : brothers) {
+            if (b.isExact() && b.getScore() > bestScore) {
+                bestScore = b.getScore();
+                bestMove = b.getMove();
+            }
+        }
+        return bestMove;
+    }
+
+    private int search(BitBoard board, int depth, int alpha, int beta, Cancellation cancellation) {
+        if (cancellation != null && cancellation.isCancelled()) {
+            return 0;
+        }
+        nodes.increment();
+        if (depth == 0 || board.isOver()) {
+            int eval = evaluator.evaluate(board);
+            return board.getTurn() == Player.RED ? eval : -eval;
+        }
+
+        MoveList moves = orderedMoves(board);
+        long eldest = moves.get(0);
+        long undo = board.applyMove(eldest);
+        int best = -search(board, depth-1, -beta, -alpha, cancellation);
+        board.undoMove(eldest, undo);
+        if (best >= beta) {
+            return best;
+        }
+        alpha = Math.max(alpha, best);
+
+        if (depth < MIN_SPLIT_DEPTH || moves.size() == 1) {
+            for (int i = 1; i < moves.size(); i++) {
+                long m = moves.get(i);
+                undo = board.applyMove(m);
+                int eval = -search(board, depth-1, -beta, -alpha, cancellation);
+                board.undoMove(m, undo);
+                best = Math.max(best, eval);
+                alpha = Math.max(alpha, eval);
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+            return best;
+        }
+
+        // Split point: the younger brothers are searched in parallel.
+        Cancellation split = new Cancellation(cancellation);
+        AtomicInteger sharedAlpha = new AtomicInteger(alpha);
+        List<BrotherTask> brothers = new ArrayList<>();
+        for (int i = 1; i < moves.size(); i++) {
+            brothers.add(new BrotherTask(board, moves.get(i), depth-1, sharedAlpha, beta, split));
+        }
+        ForkJoinTask.invokeAll(brothers);
+        if (split.isCancelled() && (cancellation == null || !cancellation.isCancelled())) {
+            // One of the brothers caused a cutoff.
+            return beta;
+        }
+        for (BrotherTask b : brothers) {
+            best = Math.max(best, b.getScore());
+        }
+        return best;
+    }
+
+    // Captures first, longest chains first, then the quiet moves.
+    private MoveList orderedMoves(BitBoard board) {
+        MoveList moves = new MoveList();
+        board.getCaptureMoves(moves);
+        for (int i = 1; i < moves.size(); i++) {
+            long m = moves.get(i);
+            int j = i - 1;
+            while (j >= 0 && Long.bitCount(moves.get(j) >>> 12) < Long.bitCount(m >>> 12)) {
+                moves.set(j + 1, moves.get(j));
+                j--;
+            }
+            moves.set(j + 1, m);
+        }
+        board.getQuietMoves(moves);
+        return moves;
+    }
+
+    // Searches one younger brother on its own copy of the board, with
+    // whatever alpha bound its siblings have established by the time it starts.
+    private class BrotherTask extends RecursiveTask<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private BitBoard board;
+        private long move;
+        private int depth;
+        private AtomicInteger sharedAlpha;
+        private int beta;
+        private Cancellation cancellation;
+        private int alphaAtStart;
+
+        BrotherTask(BitBoard board, long move, int depth, AtomicInteger sharedAlpha, int beta,
+                    Cancellation cancellation) {
+            this.board = board.copy();
+            this.move = move;
+            this.depth = depth;
+            this.sharedAlpha = sharedAlpha;
+            this.beta = beta;
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        protected Integer compute() {
+            alphaAtStart = sharedAlpha.get();
+            if (alphaAtStart >= beta) {
+                return -INFINITY;
+            }
+            board.applyMove(move);
+            int score = -search(board, depth, -beta, -alphaAtStart, cancellation);
+            if (cancellation != null && cancellation.isCancelled()) {
+                return -INFINITY;
+            }
+            sharedAlpha.accumulateAndGet(score, Math::max);
+            if (score >= beta && cancellation != null) {
+                cancellation.cancel();
+            }
+            return score;
+        }
+
+        long getMove() {
+            return move;
+        }
+
+        int getScore() {
+            return getRawResult() == null ? -INFINITY : getRawResult();
+        }
+
+        boolean isExact() {
+            return getScore() > alphaAtStart;
+        }
+    }
+
+    // A cancellation flag for one split point. Cancelling a split point
+    // also cancels every split point below it. The root one stands for
+    // the whole search, and also cancels itself at the deadline.
+    private static class Cancellation {
+
+        private final Cancellation parent;
+        private final long deadline;
+        private volatile boolean cancelled;
+
+        Cancellation(Cancellation parent) {
+            this.parent = parent;
+            this.deadline = NO_DEADLINE;
+        }
+
+        Cancellation(long deadline) {
+            this.parent = null;
+            this.deadline = deadline;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            if (cancelled) {
+                return true;
+            } else if (parent != null) {
+                return parent.isCancelled();
+            } else if (deadline != NO_DEADLINE && System.nanoTime() > deadline) {
+                cancelled = true;
+            }
+            return cancelled;
+        }
+    }
+
+    // Lets the pool's threads finish; the agent can't search afterwards.
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    public long getNodeCount() {
+        return nodes.sum();
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public StaticEval getEvalType() {
+        return evalType;
+    }
+}
@@ -0,0 +1,527 @@
+package checkers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import checkers.Board.Player;
+
+/**
+ * The BitBoard class is a compact alternative to Board for the engine.
+ * Only the dark squares are playable, so each of them gets one bit of
+ * a long. Rows are packed size/2 squares at a time, with one unused
+ * "ghost" bit after every pair of rows. That layout makes every
+ * diagonal step a constant shift (size/2 or size/2 + 1), and lets a
+ * 10x10 board fit into a single long just like 6x6 and 8x8 boards.
+ *
+ * Moves are packed into a long as well: bits 0-5 hold the origin,
+ * bits 6-11 the destination, and bits 12 and up hold the captured
+ * squares, numbered 0..(size*size/2 - 1) without the ghost bits.
+ * The legal moves are exactly the ones Board.getLegalMovesFor gives.
+ */
+
+public class BitBoard {
+
+    // Directions, in the same order Board.getNeighbors uses.
+    private static final int UP_LEFT = 0;
+    private static final int UP_RIGHT = 1;
+    private static final int DOWN_LEFT = 2;
+    private static final int DOWN_RIGHT = 3;
+
+    private int size;
+    private int half;
+    private int[] shifts;
+    private long valid;
+    private long redPromotion;
+    private long whitePromotion;
+
+    private long red;
+    private long white;
+    private long kings;
+    private Player turn;
+    private long hash;
+    private MoveList scratch;
+    private boolean maximalCapturesOnly;
+    // Outcome of this position, worked out the first time it's asked for.
+    private boolean outcomeKnown;
+    private Player winner;
+
+    // An optional table of values indexed by Zobrist piece kind and square,
+    // whose sum over all pieces is kept up to date as moves are made.
+    private int[][] pieceSquareTable;
+    private int pieceSquareScore;
+
+    public BitBoard(int size) {
+        this(new Board(size));
+    }
+
+    public BitBoard(Board board) {
+        init(board.getSize());
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                Piece p = board.getSquare(x, y).getContents();
+                if (p == null) {
+                    continue;
+                }
+                long bit = 1L << index(x, y);
+                if (p.getPlayer() == Player.RED) {
+                    red |= bit;
+                } else {
+                    white |= bit;
+                }
+                if (p.getType() == Piece.Type.KING) {
+                    kings |= bit;
+                }
+            }
+        }
+        this.turn = board.getTurn();
+        this.maximalCapturesOnly = board.isMaximalCapturesOnly();
+        computeIncrementalTerms();
+    }
+
+    // Internal constructor used only for copying the board.
+    private BitBoard(BitBoard other) {
+        this.size = other.size;
+        this.half = other.half;
+        this.shifts = other.shifts;
+        this.valid = other.valid;
+        this.redPromotion = other.redPromotion;
+        this.whitePromotion = other.whitePromotion;
+        this.red = other.red;
+        this.white = other.white;
+        this.kings = other.kings;
+        this.turn = other.turn;
+        this.maximalCapturesOnly = other.maximalCapturesOnly;
+        this.hash = other.hash;
+        this.outcomeKnown = other.outcomeKnown;
+        this.winner = other.winner;
+        this.pieceSquareTable = other.pieceSquareTable;
+        this.pieceSquareScore = other.pieceSquareScore;
+    }
+
+    private void init(int size) {
+        if ((size % 2) != 0 || size < 4 || size > 10) {
+            throw new IllegalArgumentException("BitBoard supports even sizes up to 10.");
+        }
+        this.size = size;
+        this.half = size / 2;
+        this.shifts = new int[]{-(half + 1), -half, half, half + 1};
+        for (int y = 0; y < size; y++) {
+            for (int x = 1 - (y % 2); x < size; x += 2) {
+                long bit = 1L << index(x, y);
+                valid |= bit;
+                if (y == 0) {
+                    redPromotion |= bit;
+                } else if (y == size - 1) {
+                    whitePromotion |= bit;
+                }
+            }
+        }
+    }
+
+    // Bit index of the dark square (x, y).
+    public int index(int x, int y) {
+        return (y / 2) * (size + 1) + (y % 2) * half + x / 2;
+    }
+
+    public int getX(int index) {
+        int r = index % (size + 1);
+        if (r < half) {
+            return 2 * r + 1;
+        } else {
+            return 2 * (r - half);
+        }
+    }
+
+    public int getY(int index) {
+        int r = index % (size + 1);
+        return 2 * (index / (size + 1)) + (r < half ? 0 : 1);
+    }
+
+    // Computes the Zobrist hash and the piece-square score from scratch.
+    // applyMove and undoMove keep them up to date incrementally after that.
+    private void computeIncrementalTerms() {
+        hash = turn == Player.WHITE ? Zobrist.SIDE : 0;
+        pieceSquareScore = 0;
+        long pieces = red | white;
+        while (pieces != 0) {
+            int i = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            togglePiece(i, 1);
+        }
+    }
+
+    // Adds (sign 1) or removes (sign -1) the piece on the given square
+    // from the hash and the piece-square score.
+    private void togglePiece(int index, int sign) {
+        long bit = 1L << index;
+        Player owner = (red & bit) != 0 ? Player.RED : Player.WHITE;
+        int kind = Zobrist.kind(owner, (kings & bit) != 0);
+        hash ^= Zobrist.piece(kind, index);
+        if (pieceSquareTable != null) {
+            pieceSquareScore += sign * pieceSquareTable[kind][index];
+        }
+    }
+
+    private void toggleCaptures(long captures, int sign) {
+        while (captures != 0) {
+            int i = Long.numberOfTrailingZeros(captures);
+            captures &= captures - 1;
+            togglePiece(i, sign);
+        }
+    }
+
+    private static long shift(long bits, int amount) {
+        return amount > 0 ? bits << amount : bits >>> -amount;
+    }
+
+    // Men may only move up the board if they're red, and down if they're white.
+    private boolean isForward(int direction, Player player) {
+        if (player == Player.RED) {
+            return direction == UP_LEFT || direction == UP_RIGHT;
+        } else {
+            return direction == DOWN_LEFT || direction == DOWN_RIGHT;
+        }
+    }
+
+    public void getLegalMoves(MoveList moves) {
+        getCaptureMoves(moves);
+        getQuietMoves(moves);
+    }
+
+    // Simple, non-capturing moves.
+    public void getQuietMoves(MoveList moves) {
+        long own = getPieces(turn);
+        long empty = valid & ~(red | white);
+        for (int d = 0; d < 4; d++) {
+            long movers = isForward(d, turn) ? own : own & kings;
+            int s = shifts[d];
+            long targets = shift(movers, s) & empty;
+            while (targets != 0) {
+                int to = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                moves.add(pack(to - s, to, 0));
+            }
+        }
+    }
+
+    // Captures, followed by any chained captures.
+    public void getCaptureMoves(MoveList moves) {
+        addCaptureMoves(getPieces(turn), moves);
+    }
+
+    private void addCaptureMoves(long own, MoveList moves) {
+        long opp = getPieces(opponent(turn));
+        long empty = valid & ~(red | white);
+        for (int d = 0; d < 4; d++) {
+            long movers = isForward(d, turn) ? own : own & kings;
+            int s = shifts[d];
+            long landings = shift(shift(movers, s) & opp, s) & empty;
+            while (landings != 0) {
+                int to = Long.numberOfTrailingZeros(landings);
+                landings &= landings - 1;
+                int from = to - 2 * s;
+                long captured = 1L << (to - s);
+                boolean king = (kings & (1L << from)) != 0;
+                int chainStart = moves.size();
+                if (!maximalCapturesOnly) {
+                    moves.add(pack(from, to, captured));
+                }
+                if (!addChainedCaptures(from, to, captured, king, opp, empty, moves, chainStart) &&
+                        maximalCapturesOnly) {
+                    moves.add(pack(from, to, captured));
+                }
+            }
+        }
+    }
+
+    // Checks a move that came from somewhere other than this position's
+    // move generator, such as a hash table or a killer move slot.
+    public boolean isLegal(long move) {
+        long fromBit = 1L << getOrigin(move);
+        long toBit = 1L << getDestination(move);
+        if ((getPieces(turn) & fromBit) == 0 || (toBit & valid & ~(red | white)) == 0) {
+            return false;
+        }
+        if (isCapture(move)) {
+            if (scratch == null) {
+                scratch = new MoveList();
+            }
+            scratch.clear();
+            addCaptureMoves(fromBit, scratch);
+            for (int i = 0; i < scratch.size(); i++) {
+                if (scratch.get(i) == move) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int d = 0; d < 4; d++) {
+            if (shift(fromBit, shifts[d]) == toBit) {
+                return isForward(d, turn) || (kings & fromBit) != 0;
+            }
+        }
+        return false;
+    }
+
+    public List<Long> getLegalMoves() {
+        MoveList moves = new MoveList();
+        getLegalMoves(moves);
+        List<Long> out = new ArrayList<>();
+        for (int i = 0; i < moves.size(); i++) {
+            out.add(moves.get(i));
+        }
+        return out;
+    }
+
+    // Depth-first search over capture chains. The capturing piece stays on its
+    // origin square and the captured pieces stay on the board until the move
+    // is applied, exactly as in Board, but captured pieces are lifted out of
+    // the capturable set. Chains that end on the same square with the same
+    // captures are only added once. Returns whether the chain could continue.
+    private boolean addChainedCaptures(int origin, int at, long captured, boolean king,
+                                       long opp, long empty, MoveList moves, int chainStart) {
+        boolean extended = false;
+        for (int d = 0; d < 4; d++) {
+            if (!king && !isForward(d, turn)) {
+                continue;
+            }
+            int s = shifts[d];
+            long jumped = shift(1L << at, s) & opp & ~captured;
+            long landing = shift(jumped, s) & empty;
+            if (landing != 0) {
+                extended = true;
+                int to = Long.numberOfTrailingZeros(landing);
+                long chain = captured | jumped;
+                if (!maximalCapturesOnly) {
+                    addUnique(pack(origin, to, chain), moves, chainStart);
+                }
+                if (!addChainedCaptures(origin, to, chain, king, opp, empty, moves, chainStart) &&
+                        maximalCapturesOnly) {
+                    addUnique(pack(origin, to, chain), moves, chainStart);
+                }
+            }
+        }
+        return extended;
+    }
+
+    // Two different orders of the same captures can only end on the same
+    // square if the chain is at least four captures long.
+    private static void addUnique(long move, MoveList moves, int chainStart) {
+        if (Long.bitCount(move >>> 12) >= 4) {
+            for (int i = chainStart; i < moves.size(); i++) {
+                if (moves.get(i) == move) {
+                    return;
+                }
+            }
+        }
+        moves.add(move);
+    }
+
+    public boolean hasLegalMoves() {
+        long own = getPieces(turn);
+        long opp = getPieces(opponent(turn));
+        long empty = valid & ~(red | white);
+        for (int d = 0; d < 4; d++) {
+            long movers = isForward(d, turn) ? own : own & kings;
+            int s = shifts[d];
+            if ((shift(movers, s) & empty) != 0 || (shift(shift(movers, s) & opp, s) & empty) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Applies the move and returns its undo record: the king mask from
+    // before the move, which is all undoMove needs besides the move.
+    public long applyMove(long move) {
+        long kingsBefore = kings;
+        long fromBit = 1L << getOrigin(move);
+        long toBit = 1L << getDestination(move);
+        long captures = getCaptures(move);
+        togglePiece(getOrigin(move), -1);
+        toggleCaptures(captures, -1);
+
+        // Move the piece and remove all captures.
+        if (turn == Player.RED) {
+            red ^= fromBit | toBit;
+            white &= ~captures;
+        } else {
+            white ^= fromBit | toBit;
+            red &= ~captures;
+        }
+        kings &= ~captures;
+        if ((kings & fromBit) != 0) {
+            kings ^= fromBit | toBit;
+        } else if ((turn == Player.RED && (toBit & redPromotion) != 0) ||
+                (turn == Player.WHITE && (toBit & whitePromotion) != 0)) {
+            // King pieces if necessary
+            kings |= toBit;
+        }
+
+        togglePiece(getDestination(move), 1);
+
+        // Progress to the next turn.
+        hash ^= Zobrist.SIDE;
+        outcomeKnown = false;
+        turn = opponent(turn);
+        return kingsBefore;
+    }
+
+    public void undoMove(long move, long undo) {
+        turn = opponent(turn);
+        long moved = (1L << getOrigin(move)) | (1L << getDestination(move));
+        long captures = getCaptures(move);
+        togglePiece(getDestination(move), -1);
+        if (turn == Player.RED) {
+            red ^= moved;
+            white |= captures;
+        } else {
+            white ^= moved;
+            red |= captures;
+        }
+        kings = undo;
+        togglePiece(getOrigin(move), 1);
+        toggleCaptures(captures, 1);
+        hash ^= Zobrist.SIDE;
+        outcomeKnown = false;
+    }
+
+    public Player findWinner() {
+        if (!outcomeKnown) {
+            if (red == 0) {
+                winner = Player.WHITE;
+            } else if (white == 0) {
+                winner = Player.RED;
+            } else if (hasLegalMoves()) {
+                winner = null;
+            } else {
+                winner = opponent(turn);
+            }
+            outcomeKnown = true;
+        }
+        return winner;
+    }
+
+    public boolean isOver() {
+        return findWinner() != null;
+    }
+
+    public boolean isMaximalCapturesOnly() {
+        return maximalCapturesOnly;
+    }
+
+    public BitBoard copy() {
+        return new BitBoard(this);
+    }
+
+    // Moves between the packed and the Square-based representation.
+
+    public long pack(int origin, int destination, long captures) {
+        long compact = 0;
+        while (captures != 0) {
+            int c = Long.numberOfTrailingZeros(captures);
+            captures &= captures - 1;
+            compact |= 1L << (c - c / (size + 1));
+        }
+        return (compact << 12) | ((long) destination << 6) | origin;
+    }
+
+    public static int getOrigin(long move) {
+        return (int) (move & 0x3F);
+    }
+
+    public static int getDestination(long move) {
+        return (int) ((move >>> 6) & 0x3F);
+    }
+
+    public static boolean isCapture(long move) {
+        return (move >>> 12) != 0;
+    }
+
+    // The captured squares of a move, as a mask of this board's bits.
+    public long getCaptures(long move) {
+        long compact = move >>> 12;
+        long captures = 0;
+        while (compact != 0) {
+            int c = Long.numberOfTrailingZeros(compact);
+            compact &= compact - 1;
+            captures |= 1L << (c + c / size);
+        }
+        return captures;
+    }
+
+    public Move toMove(Board board, long move) {
+        int origin = getOrigin(move);
+        int destination = getDestination(move);
+        List<Square> captures = new ArrayList<>();
+        long c = getCaptures(move);
+        while (c != 0) {
+            int i = Long.numberOfTrailingZeros(c);
+            c &= c - 1;
+            captures.add(board.getSquare(getX(i), getY(i)));
+        }
+        return new Move(board.getSquare(getX(origin), getY(origin)),
+                board.getSquare(getX(destination), getY(destination)), captures);
+    }
+
+    public long fromMove(Move m) {
+        long captures = 0;
+        for (Square c : m.getCaptures()) {
+            captures |= 1L << index(c.getX(), c.getY());
+        }
+        return pack(index(m.getOrigin().getX(), m.getOrigin().getY()),
+                index(m.getDestination().getX(), m.getDestination().getY()), captures);
+    }
+
+    public static Player opponent(Player player) {
+        return player == Player.RED ? Player.WHITE : Player.RED;
+    }
+
+    public long getPieces(Player player) {
+        return player == Player.RED ? red : white;
+    }
+
+    // Replaces the whole position, for tools that enumerate positions
+    // rather than play them. Masks use the bit layout of index(x, y).
+    public void setPosition(long red, long white, long kings, Player turn) {
+        if ((red & white) != 0 || ((red | white) & ~valid) != 0 || (kings & ~(red | white)) != 0) {
+            throw new IllegalArgumentException("Invalid position.");
+        }
+        this.red = red;
+        this.white = white;
+        this.kings = kings;
+        this.turn = turn;
+        this.outcomeKnown = false;
+        computeIncrementalTerms();
+    }
+
+    // Starts keeping the sum of the table's values over all pieces.
+    public void setPieceSquareTable(int[][] table) {
+        this.pieceSquareTable = table;
+        computeIncrementalTerms();
+    }
+
+    public int[][] getPieceSquareTable() {
+        return pieceSquareTable;
+    }
+
+    public int getPieceSquareScore() {
+        return pieceSquareScore;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public long getKings() {
+        return kings;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Player getTurn() {
+        return turn;
+    }
+}
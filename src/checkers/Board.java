@@ -19,6 +19,9 @@ public class Board {
     private Map<Player, AgentType> identities;
     private List<Square> redPieceSquares;
     private List<Square> whitePieceSquares;
+    private boolean maximalCapturesOnly; // Only allow capture chains that can't be continued.
+    private boolean[][] jumped; // Pieces already captured by the chain being generated.
+    private List<Move> legalMoves; // Legal moves of this position, or null until they're needed.
 
     public Board(int size) {
         if ((size % 2) != 0) {
@@ -27,6 +30,7 @@ public class Board {
         this.halted = false;
         this.size = size;
         this.board = new Square[size][size];
+        this.jumped = new boolean[size][size];
         this.whitePieceSquares = new ArrayList<>();
         this.redPieceSquares = new ArrayList<>();
         this.identities = new HashMap<>();
@@ -75,11 +79,46 @@ public class Board {
         }
     }
 
+    // Sets up an arbitrary position: pieces[y][x] is the piece on (x, y),
+    // or null for an empty square. Pieces may only stand on dark squares.
+    public Board(Piece[][] pieces, Player turn) {
+        int size = pieces.length;
+        if ((size % 2) != 0) {
+            throw new IllegalArgumentException("Board must have even size.");
+        }
+        this.halted = false;
+        this.size = size;
+        this.board = new Square[size][size];
+        this.jumped = new boolean[size][size];
+        this.whitePieceSquares = new ArrayList<>();
+        this.redPieceSquares = new ArrayList<>();
+        this.identities = new HashMap<>();
+        this.turn = turn;
+
+        for (int i = 0; i < size; i++) {
+            if (pieces[i].length != size) {
+                throw new IllegalArgumentException("Board must be square.");
+            }
+            for (int j = 0; j < size; j++) {
+                Piece piece = pieces[i][j];
+                board[i][j] = new Square(piece, j, i);
+                if (piece == null) {
+                    continue;
+                }
+                if ((i + j) % 2 == 0) {
+                    throw new IllegalArgumentException("Pieces must be on dark squares.");
+                }
+                getPieces(piece.getPlayer()).add(board[i][j]);
+            }
+        }
+    }
+
     // Internal constructor used only for copying the board.
     private Board(Square[][] board, Player turn, HashMap<Player, AgentType> identities,
                   List<Square> redPieceSquares, List<Square> whitePieceSquares) {
         this.size = board.length;
         this.board = board;
+        this.jumped = new boolean[size][size];
         this.turn = turn;
         this.identities = identities;
         this.redPieceSquares = redPieceSquares;
@@ -118,86 +157,139 @@ public class Board {
     // legal moves for that particular piece.
 
     public List<Move> getLegalMovesFor(Square square) {
-        return getLegalMovesFor(square, turn, square.getContents().getType(), null);
-    }
-
-    private List<Move> getLegalMovesFor(Square square, Player player, Piece.Type type, Move chained) {
-        if (square == null || player == null) {
+        if (square == null || square.getContents() == null) {
             throw new IllegalArgumentException("Invalid arguments.");
         }
-        List<Move> legalMoves = new ArrayList<>();
+        List<Move> movesFor = new ArrayList<>();
         // Make sure that this piece is allowed to move.
-        if (chained == null && square.getContents().getPlayer() != turn) {
-            return legalMoves;
+        if (square.getContents().getPlayer() != turn) {
+            return movesFor;
+        }
+        for (Move m : getLegalMoves()) {
+            if (m.getOrigin() == square) {
+                movesFor.add(m);
+            }
         }
+        return movesFor;
+    }
 
-        List<Square> neighbors = getNeighbors(square);
-        for (Square n : neighbors) {
-            boolean correctDirection = type == Piece.Type.KING || (type == Piece.Type.MAN &&
-                    ((player == Player.RED && (n.getY() - square.getY() < 0)) ||
-                    player == Player.WHITE && (n.getY() - square.getY() > 0)));
-            Piece other = n.getContents();
-            if (correctDirection) {
-                // Legal simple move?
-                if (other == null && chained == null) {
-                    legalMoves.add(new Move(square, n));
-                // Legal capture move?
-                } else if (other != null && other.getPlayer() != player) {
-                    int dx = n.getX() - square.getX();
-                    int dy = n.getY() - square.getY();
-                    Square dest = getSquare(square.getX() + 2*dx, square.getY() + 2*dy);
-                    if (dest != null && dest.getContents() == null) {
-                        // If this is the first jump in a chain, it's just a normal capture.
-                        // Also make sure you're not capturing the same piece twice.
-                        if (chained == null || !chained.getCaptures().contains(n)) {
-                            Move capture = new Move(square, dest, n);
-                            if (chained != null) {
-                                capture = chained.followedBy(capture);
-                            }
-                            legalMoves.add(capture);
-                            // Search for chained captures.
-                            legalMoves.addAll(getLegalMovesFor(dest, player, type, capture));
-                        }
-                    }
-                }
+    // All legal moves of the player to move. They're generated once per
+    // position, the first time they're asked for, and thrown away when
+    // a move is applied or undone.
+    public List<Move> getLegalMoves() {
+        if (legalMoves == null) {
+            List<Move> moves = new ArrayList<>();
+            for (Square s : getPieces(turn)) {
+                addLegalMovesFor(s, moves);
             }
+            legalMoves = Collections.unmodifiableList(moves);
         }
         return legalMoves;
     }
 
+    private void addLegalMovesFor(Square square, List<Move> legalMoves) {
+        Player player = square.getContents().getPlayer();
+        Piece.Type type = square.getContents().getType();
+        for (Square n : getNeighbors(square)) {
+            // Legal simple move?
+            if (isCorrectDirection(square, n, player, type) && n.getContents() == null) {
+                legalMoves.add(new Move(square, n));
+            }
+        }
+        addCaptures(square, square, player, type, new ArrayList<>(), new HashSet<>(), legalMoves);
+    }
+
+    private boolean isCorrectDirection(Square from, Square to, Player player, Piece.Type type) {
+        return type == Piece.Type.KING || (type == Piece.Type.MAN &&
+                ((player == Player.RED && (to.getY() - from.getY() < 0)) ||
+                player == Player.WHITE && (to.getY() - from.getY() > 0)));
+    }
+
+    // Depth-first search over capture chains, in place. The capturing piece
+    // stays on its origin square and jumped pieces stay on the board, so
+    // neither can be landed on, but jumped pieces are marked so they can't
+    // be captured twice. Chains that end on the same square with the same
+    // captures are only added once. Returns whether any capture was found.
+    private boolean addCaptures(Square origin, Square at, Player player, Piece.Type type,
+                                List<Square> captures, Set<BitSet> seen, List<Move> legalMoves) {
+        boolean extended = false;
+        for (Square n : getNeighbors(at)) {
+            Piece other = n.getContents();
+            if (!isCorrectDirection(at, n, player, type) || other == null || other.getPlayer() == player ||
+                    jumped[n.getY()][n.getX()]) {
+                continue;
+            }
+            int dx = n.getX() - at.getX();
+            int dy = n.getY() - at.getY();
+            Square dest = getSquare(at.getX() + 2*dx, at.getY() + 2*dy);
+            if (dest == null || dest.getContents() != null) {
+                continue;
+            }
+            extended = true;
+            jumped[n.getY()][n.getX()] = true;
+            captures.add(n);
+            if (!maximalCapturesOnly) {
+                addCapture(origin, dest, captures, seen, legalMoves);
+            }
+            // Search for chained captures.
+            boolean continues = addCaptures(origin, dest, player, type, captures, seen, legalMoves);
+            if (maximalCapturesOnly && !continues) {
+                addCapture(origin, dest, captures, seen, legalMoves);
+            }
+            captures.remove(captures.size() - 1);
+            jumped[n.getY()][n.getX()] = false;
+        }
+        return extended;
+    }
+
+    private void addCapture(Square origin, Square dest, List<Square> captures,
+                            Set<BitSet> seen, List<Move> legalMoves) {
+        BitSet key = new BitSet();
+        for (Square c : captures) {
+            key.set(c.getY()*size + c.getX());
+        }
+        key.set(size*size + dest.getY()*size + dest.getX());
+        if (seen.add(key)) {
+            legalMoves.add(new Move(origin, dest, new ArrayList<>(captures)));
+        }
+    }
+
     public List<Move> getAllLegalMoves(Player player) {
         List<Move> moves = new ArrayList<>();
-        for (Square s : getPieces(player)) {
-            moves.addAll(getLegalMovesFor(s));
+        if (player == turn) {
+            moves.addAll(getLegalMoves());
         }
         return moves;
     }
 
-    public void applyMove(Move m) {
+    // Applies the move and returns a record that undoMove can use
+    // to restore the position exactly.
+    public UndoRecord applyMove(Move m) {
         Square source = m.getOrigin();
         Square dest = m.getDestination();
         Piece piece = source.getContents();
         List<Square> captures = m.getCaptures();
+        List<Square> ownPieces = getPieces(piece.getPlayer());
+        int originIndex = ownPieces.indexOf(source);
+        Piece[] capturedPieces = new Piece[captures.size()];
+        int[] captureIndices = new int[captures.size()];
+        UndoRecord record = new UndoRecord(m, turn, originIndex, capturedPieces, captureIndices);
+        legalMoves = null;
 
         // Move the piece.
         dest.setContents(piece);
         source.setContents(null);
         // Update the piece square lists.
-        if (piece.getPlayer() == Player.RED) {
-            redPieceSquares.remove(source);
-            redPieceSquares.add(dest);
-        } else {
-            whitePieceSquares.remove(source);
-            whitePieceSquares.add(dest);
-        }
+        ownPieces.remove(originIndex);
+        ownPieces.add(dest);
 
         // Remove all captures.
-        for (Square c : captures) {
-            if (c.getContents().getPlayer() == Player.WHITE) {
-                whitePieceSquares.remove(c);
-            } else {
-                redPieceSquares.remove(c);
-            }
+        for (int i = 0; i < captures.size(); i++) {
+            Square c = captures.get(i);
+            List<Square> capturedList = getPieces(c.getContents().getPlayer());
+            capturedPieces[i] = c.getContents();
+            captureIndices[i] = capturedList.indexOf(c);
+            capturedList.remove(captureIndices[i]);
             c.setContents(null);
         }
         // King pieces if necessary
@@ -206,6 +298,7 @@ public class Board {
                 (piece.getPlayer() == Player.WHITE && dest.getY() == size - 1));
         if (kingMe) {
             piece.kingMe();
+            record.setPromotion(true);
         }
 
         // Progress to the next turn.
@@ -214,6 +307,49 @@ public class Board {
         } else {
             turn = Player.RED;
         }
+        return record;
+    }
+
+    // Takes back the last applied move. Records must be undone in the
+    // reverse order of the moves that produced them.
+    public void undoMove(UndoRecord record) {
+        Move m = record.getMove();
+        Square source = m.getOrigin();
+        Square dest = m.getDestination();
+        Piece piece = dest.getContents();
+        legalMoves = null;
+
+        if (record.isPromotion()) {
+            piece.unKingMe();
+        }
+
+        // Put the captured pieces back where they were in their lists.
+        List<Square> captures = m.getCaptures();
+        Piece[] capturedPieces = record.getCapturedPieces();
+        int[] captureIndices = record.getCaptureIndices();
+        for (int i = captures.size() - 1; i >= 0; i--) {
+            Square c = captures.get(i);
+            c.setContents(capturedPieces[i]);
+            getPieces(capturedPieces[i].getPlayer()).add(captureIndices[i], c);
+        }
+
+        // Move the piece back.
+        List<Square> ownPieces = getPieces(piece.getPlayer());
+        ownPieces.remove(ownPieces.size() - 1);
+        ownPieces.add(record.getOriginIndex(), source);
+        source.setContents(piece);
+        dest.setContents(null);
+
+        turn = record.getTurn();
+    }
+
+    public void setMaximalCapturesOnly(boolean maximalCapturesOnly) {
+        this.maximalCapturesOnly = maximalCapturesOnly;
+        this.legalMoves = null;
+    }
+
+    public boolean isMaximalCapturesOnly() {
+        return maximalCapturesOnly;
     }
 
     public void setPlayer(Player player, AgentType agentType) {
@@ -246,21 +382,10 @@ public class Board {
         } else if (whitePieceSquares.size() == 0) {
             return Player.RED;
         }
-        if (turn == Player.RED) {
-            for (Square s : redPieceSquares) {
-                if (getLegalMovesFor(s, Player.RED, s.getContents().getType(), null).size() != 0) {
-                    return null;
-                }
-            }
-            return Player.WHITE;
-        } else {
-            for (Square s : whitePieceSquares) {
-                if (getLegalMovesFor(s, Player.WHITE, s.getContents().getType(), null).size() != 0) {
-                    return null;
-                }
-            }
-            return Player.RED;
+        if (getLegalMoves().size() != 0) {
+            return null;
         }
+        return turn == Player.RED ? Player.WHITE : Player.RED;
     }
 
     public boolean inEnding() {
@@ -308,7 +433,9 @@ public class Board {
         copiedIdentities.put(Player.RED, identities.get(Player.RED));
         copiedIdentities.put(Player.WHITE, identities.get(Player.WHITE));
 
-        return new Board(copiedBoard, turn, copiedIdentities, copiedRedPieceSquares, copiedWhitePieceSquares);
+        Board copied = new Board(copiedBoard, turn, copiedIdentities, copiedRedPieceSquares, copiedWhitePieceSquares);
+        copied.setMaximalCapturesOnly(maximalCapturesOnly);
+        return copied;
     }
 
     public Move transferMove(Move m) {
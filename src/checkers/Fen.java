@@ -0,0 +1,119 @@
+package checkers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import checkers.Board.Player;
+
+/**
+ * Positions in the FEN notation of PDN, such as "B:W18,24,K27:B12,16,20".
+ * The first letter is the side to move, and each colour lists its squares,
+ * with K in front of kings. Ranges like "B1-12" are read but not written.
+ *
+ * PDN calls the side that moves first black, so red is B and white is W.
+ * The dark squares are numbered from 1, size/2 to a row, starting at the
+ * corner on red's right and going away from red, so that on 8x8 red's men
+ * start on 1-12 and white's on 21-32 as in English checkers.
+ */
+
+public final class Fen {
+
+    private Fen() {
+    }
+
+    public static String format(Board board) {
+        StringBuilder fen = new StringBuilder();
+        fen.append(letter(board.getTurn()));
+        for (Player player : new Player[]{Player.WHITE, Player.RED}) {
+            fen.append(':').append(letter(player));
+            List<Square> squares = new ArrayList<>(board.getPieces(player));
+            int size = board.getSize();
+            squares.sort((a, b) -> number(a.getX(), a.getY(), size) - number(b.getX(), b.getY(), size));
+            for (int i = 0; i < squares.size(); i++) {
+                Square s = squares.get(i);
+                fen.append(i == 0 ? "" : ",");
+                if (s.getContents().getType() == Piece.Type.KING) {
+                    fen.append('K');
+                }
+                fen.append(number(s.getX(), s.getY(), size));
+            }
+        }
+        return fen.toString();
+    }
+
+    public static Board parse(String fen, int size) {
+        String[] fields = fen.trim().split(":");
+        if (fields.length == 0 || fields.length > 3 || fields[0].length() != 1) {
+            throw new IllegalArgumentException("Bad FEN: " + fen);
+        }
+        Player turn = player(fields[0].charAt(0), fen);
+        Piece[][] pieces = new Piece[size][size];
+        for (int f = 1; f < fields.length; f++) {
+            String field = fields[f].trim();
+            if (field.isEmpty()) {
+                throw new IllegalArgumentException("Bad FEN: " + fen);
+            }
+            Player player = player(field.charAt(0), fen);
+            for (String item : field.substring(1).split(",")) {
+                item = item.trim();
+                if (item.isEmpty()) {
+                    continue;
+                }
+                boolean king = item.charAt(0) == 'K';
+                if (king) {
+                    item = item.substring(1);
+                }
+                String[] range = item.split("-");
+                try {
+                    int first = Integer.parseInt(range[0]);
+                    int last = range.length > 1 ? Integer.parseInt(range[1]) : first;
+                    for (int n = first; n <= last; n++) {
+                        int x = getX(n, size);
+                        int y = getY(n, size);
+                        pieces[y][x] = new Piece(king ? Piece.Type.KING : Piece.Type.MAN, player);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad FEN: " + fen);
+                }
+            }
+        }
+        return new Board(pieces, turn);
+    }
+
+    // The PDN number of the dark square (x, y).
+    public static int number(int x, int y, int size) {
+        return (size - 1 - y) * (size / 2) + (size - 1 - x) / 2 + 1;
+    }
+
+    public static int getX(int number, int size) {
+        checkNumber(number, size);
+        int column = (number - 1) % (size / 2);
+        int x = size - 1 - 2 * column;
+        // Of the two columns the number could be in, the one that's dark on its row.
+        return (x + getY(number, size)) % 2 == 1 ? x : x - 1;
+    }
+
+    public static int getY(int number, int size) {
+        checkNumber(number, size);
+        return size - 1 - (number - 1) / (size / 2);
+    }
+
+    private static void checkNumber(int number, int size) {
+        if (number < 1 || number > size * size / 2) {
+            throw new IllegalArgumentException("No square " + number + " on a " + size + "x" + size + " board.");
+        }
+    }
+
+    private static char letter(Player player) {
+        return player == Player.RED ? 'B' : 'W';
+    }
+
+    private static Player player(char letter, String fen) {
+        if (letter == 'B') {
+            return Player.RED;
+        } else if (letter == 'W') {
+            return Player.WHITE;
+        }
+        throw new IllegalArgumentException("Bad FEN: " + fen);
+    }
+}
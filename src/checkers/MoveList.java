@@ -0,0 +1,47 @@
+package checkers;
+
+/**
+ * A MoveList is a growable buffer of packed BitBoard moves.
+ * It only allocates when it needs to grow, so the same list
+ * can be cleared and refilled at every node of a search.
+ */
+
+public class MoveList {
+
+    private long[] moves;
+    private int size;
+
+    public MoveList() {
+        this(64);
+    }
+
+    public MoveList(int capacity) {
+        this.moves = new long[capacity];
+        this.size = 0;
+    }
+
+    public void add(long move) {
+        if (size == moves.length) {
+            long[] grown = new long[moves.length * 2];
+            System.arraycopy(moves, 0, grown, 0, size);
+            moves = grown;
+        }
+        moves[size++] = move;
+    }
+
+    public long get(int i) {
+        return moves[i];
+    }
+
+    public void set(int i, long move) {
+        moves[i] = move;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,88 @@
+package checkers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import checkers.Board.Player;
+
+/**
+ * A game as PDN stores it: its tags, the position it starts from, its
+ * moves and its result. A game without moves is just a position.
+ *
+ * Moves are only kept for their squares, so they can come from any board.
+ * Results are written PDN's way, black's (red's) score first: "1-0" when
+ * red wins, "0-1" when white does, "1/2-1/2" for a draw and "*" when the
+ * game isn't finished.
+ */
+
+public class PdnGame {
+
+    public static final String RED_WINS = "1-0";
+    public static final String WHITE_WINS = "0-1";
+    public static final String DRAW = "1/2-1/2";
+    public static final String UNFINISHED = "*";
+
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private final Board start;
+    private final List<Move> moves = new ArrayList<>();
+    private String result = UNFINISHED;
+
+    public PdnGame(Board start) {
+        this.start = start.copy();
+    }
+
+    // Tags keep the order they were first set in.
+    public void setTag(String name, String value) {
+        tags.put(name, value);
+    }
+
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    public Map<String, String> getTags() {
+        return Collections.unmodifiableMap(tags);
+    }
+
+    // A copy of the starting position, so that it can be played on.
+    public Board getStart() {
+        return start.copy();
+    }
+
+    public int getSize() {
+        return start.getSize();
+    }
+
+    public void addMove(Move move) {
+        moves.add(move);
+    }
+
+    public List<Move> getMoves() {
+        return Collections.unmodifiableList(moves);
+    }
+
+    // The position after all the moves.
+    public Board getEnd() {
+        Board board = getStart();
+        for (Move m : moves) {
+            board.applyMove(board.transferMove(m));
+        }
+        return board;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    // Sets the result from the winner, or a draw for null.
+    public void setWinner(Player winner) {
+        result = winner == null ? DRAW : winner == Player.RED ? RED_WINS : WHITE_WINS;
+    }
+}
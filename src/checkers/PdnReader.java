@@ -0,0 +1,280 @@
+package checkers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads games and positions from PDN one at a time, so that files of any
+ * size can be streamed. Each game's moves are checked against the rules
+ * as they're read.
+ *
+ * A game starts from its FEN tag if it has one, and from the usual
+ * position otherwise. The board size is the width in its GameType tag,
+ * such as "21,B,10,10,N2,0", and 8 without one. Move numbers, comments,
+ * variations and annotations are skipped. Captures may give every square
+ * the piece lands on, "22x15x6", or just the first and last, "22x6", in
+ * which case the first legal capture between them is taken.
+ */
+
+public class PdnReader implements Closeable {
+
+    private final PushbackReader in;
+    private boolean maximalCapturesOnly;
+    private int line = 1;
+
+    public PdnReader(Reader in) {
+        this.in = new PushbackReader(in);
+    }
+
+    // The rule the games were played with, which decides which moves are legal.
+    public void setMaximalCapturesOnly(boolean maximalCapturesOnly) {
+        this.maximalCapturesOnly = maximalCapturesOnly;
+    }
+
+    // The next game, or null at the end of the input.
+    public PdnGame readGame() throws IOException {
+        List<String[]> tags = new ArrayList<>();
+        PdnGame game = null;
+        Board board = null;
+        int c;
+        while ((c = skipSpace()) != -1) {
+            if (c == '[') {
+                if (game != null) {
+                    // The next game's tags, and this game had no result.
+                    in.unread(c);
+                    return game;
+                }
+                tags.add(readTag());
+                continue;
+            }
+            if (game == null) {
+                game = newGame(tags);
+                board = game.getStart();
+            }
+            if (c == '{') {
+                skipUntil('}');
+            } else if (c == '(') {
+                skipVariation();
+            } else {
+                String token = readToken(c);
+                if (isResult(token)) {
+                    game.setResult(token);
+                    return game;
+                }
+                // Move numbers may run into the move, as in "1.11-15".
+                token = token.replaceFirst("^[0-9]+\\.+", "");
+                // Annotations like "!" or "?" after a move.
+                token = token.replaceFirst("[!?]+$", "");
+                if (!token.isEmpty() && token.charAt(0) != '$') {
+                    Move m = findMove(board, token);
+                    board.applyMove(m);
+                    game.addMove(m);
+                }
+            }
+        }
+        if (game == null && !tags.isEmpty()) {
+            game = newGame(tags);
+        }
+        return game;
+    }
+
+    private PdnGame newGame(List<String[]> tags) throws IOException {
+        int size = 8;
+        String fen = null;
+        for (String[] tag : tags) {
+            if (tag[0].equals("GameType")) {
+                String[] fields = tag[1].split(",");
+                if (fields.length >= 3) {
+                    size = parseNumber(fields[2].trim());
+                }
+            } else if (tag[0].equals("FEN")) {
+                fen = tag[1];
+            }
+        }
+        Board start;
+        try {
+            start = fen == null ? new Board(size) : Fen.parse(fen, size);
+        } catch (IllegalArgumentException e) {
+            throw error(e.getMessage());
+        }
+        start.setMaximalCapturesOnly(maximalCapturesOnly);
+        PdnGame game = new PdnGame(start);
+        for (String[] tag : tags) {
+            game.setTag(tag[0], tag[1]);
+        }
+        return game;
+    }
+
+    // The legal move a token like "11-15", "22x15x6" or "22x6" stands for.
+    private Move findMove(Board board, String token) throws IOException {
+        boolean capture = token.indexOf('x') >= 0;
+        String[] parts = token.split(capture ? "x" : "-");
+        int size = board.getSize();
+        if (parts.length < 2 || (!capture && parts.length != 2)) {
+            throw error("Bad move " + token);
+        }
+        int[] xs = new int[parts.length];
+        int[] ys = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            int number = parseNumber(parts[i]);
+            if (number < 1 || number > size * size / 2) {
+                throw error("No square " + number + " in " + token);
+            }
+            xs[i] = Fen.getX(number, size);
+            ys[i] = Fen.getY(number, size);
+        }
+        int last = parts.length - 1;
+        // With every landing square given, the captured pieces are the
+        // ones in between, and they tell apart chains with the same ends.
+        boolean[][] captured = null;
+        if (capture && (parts.length > 2 || Math.abs(xs[1] - xs[0]) == 2)) {
+            captured = new boolean[size][size];
+            for (int i = 1; i <= last; i++) {
+                captured[(ys[i] + ys[i - 1]) / 2][(xs[i] + xs[i - 1]) / 2] = true;
+            }
+        }
+        Move fallback = null;
+        for (Move m : board.getLegalMoves()) {
+            if (m.isCapture() != capture || m.getOrigin().getX() != xs[0] || m.getOrigin().getY() != ys[0] ||
+                    m.getDestination().getX() != xs[last] || m.getDestination().getY() != ys[last]) {
+                continue;
+            }
+            if (captured == null || capturesExactly(m, captured, last)) {
+                return m;
+            }
+            if (parts.length == 2 && fallback == null) {
+                fallback = m;
+            }
+        }
+        if (fallback != null) {
+            return fallback;
+        }
+        throw error("Illegal move " + token);
+    }
+
+    private static boolean capturesExactly(Move m, boolean[][] captured, int count) {
+        if (m.getCaptures().size() != count) {
+            return false;
+        }
+        for (Square c : m.getCaptures()) {
+            if (!captured[c.getY()][c.getX()]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The GameType value PdnWriter gives boards of a size.
+    static String gameType(int size) {
+        return "21,B," + size + "," + size + ",N2,0";
+    }
+
+    private static boolean isResult(String token) {
+        return token.equals(PdnGame.RED_WINS) || token.equals(PdnGame.WHITE_WINS) ||
+                token.equals(PdnGame.DRAW) || token.equals(PdnGame.UNFINISHED) ||
+                token.equals("2-0") || token.equals("0-2") || token.equals("1-1") || token.equals("0-0");
+    }
+
+    // A tag's name and value, after its '['.
+    private String[] readTag() throws IOException {
+        StringBuilder name = new StringBuilder();
+        int c = skipSpace();
+        while (c != -1 && !Character.isWhitespace(c) && c != '"' && c != ']') {
+            name.append((char) c);
+            c = read();
+        }
+        if (c != '"') {
+            c = skipSpace();
+        }
+        if (c != '"') {
+            throw error("Bad tag " + name);
+        }
+        StringBuilder value = new StringBuilder();
+        while ((c = read()) != '"') {
+            if (c == -1) {
+                throw error("Unfinished tag " + name);
+            }
+            if (c == '\\') {
+                c = read();
+            }
+            value.append((char) c);
+        }
+        skipUntil(']');
+        return new String[]{name.toString(), value.toString()};
+    }
+
+    private String readToken(int c) throws IOException {
+        StringBuilder token = new StringBuilder();
+        while (c != -1 && !Character.isWhitespace(c) && c != '{' && c != '(' && c != '[') {
+            token.append((char) c);
+            c = read();
+        }
+        if (c == '{' || c == '(' || c == '[') {
+            in.unread(c);
+        }
+        return token.toString();
+    }
+
+    private void skipVariation() throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            int c = read();
+            if (c == -1) {
+                throw error("Unfinished variation");
+            } else if (c == '{') {
+                skipUntil('}');
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            }
+        }
+    }
+
+    private void skipUntil(char end) throws IOException {
+        int c;
+        while ((c = read()) != end) {
+            if (c == -1) {
+                throw error("Expected " + end);
+            }
+        }
+    }
+
+    // The first character that isn't white space, or -1 at the end.
+    private int skipSpace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != -1 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private int read() throws IOException {
+        int c = in.read();
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    private int parseNumber(String s) throws IOException {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw error("Bad number " + s);
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException("Line " + line + ": " + message);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,149 @@
+package checkers;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import checkers.Board.Player;
+
+/**
+ * Writes games and positions as PDN, one at a time, so that any number of
+ * them can be streamed to a file. Games that don't start from the usual
+ * position get a FEN tag, and boards other than 8x8 a GameType tag with
+ * the size; see PdnReader. Captures are written with every square the
+ * piece lands on, like "22x15x6". Writing is synchronized, so games from
+ * several threads can share a writer.
+ */
+
+public class PdnWriter implements Closeable, Flushable {
+
+    private static final int LINE_LENGTH = 79;
+
+    private final Writer out;
+
+    public PdnWriter(Writer out) {
+        this.out = out;
+    }
+
+    public synchronized void writeGame(PdnGame game) throws IOException {
+        int size = game.getSize();
+        Board start = game.getStart();
+        for (Map.Entry<String, String> tag : game.getTags().entrySet()) {
+            if (!tag.getKey().equals("GameType") && !tag.getKey().equals("FEN")) {
+                writeTag(tag.getKey(), tag.getValue());
+            }
+        }
+        if (size != 8) {
+            writeTag("GameType", PdnReader.gameType(size));
+        }
+        String fen = Fen.format(start);
+        if (!fen.equals(Fen.format(new Board(size)))) {
+            writeTag("FEN", fen);
+        }
+        out.write('\n');
+
+        // Movetext, numbered by red's moves and wrapped.
+        StringBuilder line = new StringBuilder();
+        Player turn = start.getTurn();
+        int number = 1;
+        boolean first = true;
+        for (Move m : game.getMoves()) {
+            // A move number stays on the same line as its move.
+            String move = notation(m, size);
+            if (turn == Player.RED) {
+                move = number + ". " + move;
+            } else if (first) {
+                move = number + "... " + move;
+            }
+            append(line, move);
+            if (turn == Player.WHITE) {
+                number++;
+            }
+            turn = BitBoard.opponent(turn);
+            first = false;
+        }
+        append(line, game.getResult());
+        out.write(line.toString());
+        out.write("\n\n");
+    }
+
+    // A game with no moves, to store a position.
+    public void writePosition(Board board) throws IOException {
+        writeGame(new PdnGame(board));
+    }
+
+    // Adds a token to the line, writing the line out first if it's full.
+    private void append(StringBuilder line, String token) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + token.length() > LINE_LENGTH) {
+            out.write(line.toString());
+            out.write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(token);
+    }
+
+    private void writeTag(String name, String value) throws IOException {
+        out.write("[" + name + " \"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"]\n");
+    }
+
+    // A move in PDN's numbers, like "11-15" or "22x15x6".
+    public static String notation(Move m, int size) {
+        Square origin = m.getOrigin();
+        StringBuilder s = new StringBuilder();
+        s.append(Fen.number(origin.getX(), origin.getY(), size));
+        if (!m.isCapture()) {
+            Square dest = m.getDestination();
+            return s.append('-').append(Fen.number(dest.getX(), dest.getY(), size)).toString();
+        }
+        List<int[]> landings = new ArrayList<>();
+        if (!findLandings(origin.getX(), origin.getY(), m, new boolean[m.getCaptures().size()], landings)) {
+            throw new IllegalArgumentException("Not a capture chain.");
+        }
+        for (int[] l : landings) {
+            s.append('x').append(Fen.number(l[0], l[1], size));
+        }
+        return s.toString();
+    }
+
+    // The squares a capture lands on, in order. The captures of a move
+    // aren't always listed in the order they're made, so this looks for
+    // the chain that takes each of them once and ends on the destination.
+    private static boolean findLandings(int x, int y, Move m, boolean[] used, List<int[]> landings) {
+        if (landings.size() == used.length) {
+            return x == m.getDestination().getX() && y == m.getDestination().getY();
+        }
+        List<Square> captures = m.getCaptures();
+        for (int i = 0; i < used.length; i++) {
+            Square c = captures.get(i);
+            if (used[i] || Math.abs(c.getX() - x) != 1 || Math.abs(c.getY() - y) != 1) {
+                continue;
+            }
+            used[i] = true;
+            landings.add(new int[]{2 * c.getX() - x, 2 * c.getY() - y});
+            int[] landing = landings.get(landings.size() - 1);
+            if (findLandings(landing[0], landing[1], m, used, landings)) {
+                return true;
+            }
+            landings.remove(landings.size() - 1);
+            used[i] = false;
+        }
+        return false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
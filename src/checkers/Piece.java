@@ -38,4 +38,9 @@ public class Piece {
         type = Type.KING;
     }
 
+    // Only used by Board.undoMove to take back a promotion.
+    void unKingMe() {
+        type = Type.MAN;
+    }
+
 }
@@ -0,0 +1,98 @@
+package checkers;
+
+import java.nio.ByteBuffer;
+
+import checkers.Board.Player;
+
+/**
+ * A fixed-width binary form of a position, for storing and streaming large
+ * numbers of them. Every position takes BYTES bytes whatever the board
+ * size, so records can be read at any offset and counted from a file's
+ * length.
+ *
+ * The dark squares are numbered 0..(size*size/2 - 1), the way BitBoard
+ * numbers captures, and a position is three 50-bit masks over them (red
+ * pieces, white pieces, kings) followed by the side to move and the board
+ * size, packed little end first into two longs and an int:
+ *
+ *   long 0: red, then the low 14 bits of white
+ *   long 1: the high 36 bits of white, then the low 28 bits of kings
+ *   int:    the high 22 bits of kings, a bit set if white is to move,
+ *           and size/2 - 2 in two bits
+ *
+ * Encoding and decoding go through a BitBoard and allocate nothing.
+ */
+
+public final class PositionCodec {
+
+    public static final int BYTES = 20;
+
+    private static final int SQUARES = 50;
+    private static final long SQUARE_MASK = (1L << SQUARES) - 1;
+    private static final int TURN_SHIFT = 22;
+    private static final int SIZE_SHIFT = 23;
+
+    private PositionCodec() {
+    }
+
+    // Writes the position at the buffer's position, which moves past it.
+    public static void encode(BitBoard board, ByteBuffer out) {
+        int size = board.getSize();
+        long red = compact(board.getPieces(Player.RED), size);
+        long white = compact(board.getPieces(Player.WHITE), size);
+        long kings = compact(board.getKings(), size);
+        int header = (board.getTurn() == Player.WHITE ? 1 << TURN_SHIFT : 0) | (size / 2 - 2) << SIZE_SHIFT;
+        out.putLong(red | white << SQUARES);
+        out.putLong(white >>> 14 | kings << 36);
+        out.putInt((int) (kings >>> 28) | header);
+    }
+
+    // Reads the position at the buffer's position into the board, which
+    // must be of the same size; see getSize.
+    public static void decode(ByteBuffer in, BitBoard board) {
+        long first = in.getLong();
+        long second = in.getLong();
+        int third = in.getInt();
+        int size = size(third);
+        if (size != board.getSize()) {
+            throw new IllegalArgumentException("Position is for a " + size + "x" + size + " board, not " +
+                    board.getSize() + "x" + board.getSize() + ".");
+        }
+        long red = first & SQUARE_MASK;
+        long white = (first >>> SQUARES | second << 14) & SQUARE_MASK;
+        long kings = (second >>> 36 | ((long) third & ((1 << TURN_SHIFT) - 1)) << 28) & SQUARE_MASK;
+        Player turn = (third & 1 << TURN_SHIFT) != 0 ? Player.WHITE : Player.RED;
+        board.setPosition(expand(red, size), expand(white, size), expand(kings, size), turn);
+    }
+
+    // The board size of the position at the buffer's position, without moving it.
+    public static int getSize(ByteBuffer in) {
+        return size(in.getInt(in.position() + 2 * Long.BYTES));
+    }
+
+    private static int size(int third) {
+        return 2 * ((third >>> SIZE_SHIFT & 3) + 2);
+    }
+
+    // From BitBoard's layout, with a ghost bit after every two rows, to
+    // consecutive square numbers.
+    private static long compact(long mask, int size) {
+        long compact = 0;
+        while (mask != 0) {
+            int i = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            compact |= 1L << (i - i / (size + 1));
+        }
+        return compact;
+    }
+
+    private static long expand(long compact, int size) {
+        long mask = 0;
+        while (compact != 0) {
+            int c = Long.numberOfTrailingZeros(compact);
+            compact &= compact - 1;
+            mask |= 1L << (c + c / size);
+        }
+        return mask;
+    }
+}
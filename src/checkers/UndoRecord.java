@@ -0,0 +1,56 @@
+package checkers;
+
+/**
+ * An UndoRecord holds everything Board.undoMove needs to take back
+ * a move: the move itself, where the moving piece and the captured
+ * pieces sat in the piece lists, the captured pieces themselves,
+ * whether the move crowned a king, and whose turn it was.
+ */
+
+public class UndoRecord {
+
+    private Move move;
+    private Board.Player turn;
+    private int originIndex;
+    private Piece[] capturedPieces;
+    private int[] captureIndices;
+    private boolean promoted;
+
+    UndoRecord(Move move, Board.Player turn, int originIndex,
+               Piece[] capturedPieces, int[] captureIndices) {
+        this.move = move;
+        this.turn = turn;
+        this.originIndex = originIndex;
+        this.capturedPieces = capturedPieces;
+        this.captureIndices = captureIndices;
+        this.promoted = false;
+    }
+
+    public Move getMove() {
+        return move;
+    }
+
+    Board.Player getTurn() {
+        return turn;
+    }
+
+    int getOriginIndex() {
+        return originIndex;
+    }
+
+    Piece[] getCapturedPieces() {
+        return capturedPieces;
+    }
+
+    int[] getCaptureIndices() {
+        return captureIndices;
+    }
+
+    boolean isPromotion() {
+        return promoted;
+    }
+
+    void setPromotion(boolean promoted) {
+        this.promoted = promoted;
+    }
+}
@@ -0,0 +1,46 @@
+package checkers;
+
+import java.util.Random;
+
+/**
+ * Zobrist keys for BitBoard positions. Every (piece kind, square bit)
+ * pair gets a random 64-bit key, and a position's hash is the XOR of
+ * the keys of its pieces, plus SIDE when white is to move. The seed is
+ * fixed, so hashes are stable between runs and can be stored in files.
+ */
+
+public class Zobrist {
+
+    public static final int RED_MAN = 0;
+    public static final int RED_KING = 1;
+    public static final int WHITE_MAN = 2;
+    public static final int WHITE_KING = 3;
+
+    private static final long[][] PIECES = new long[4][64];
+    public static final long SIDE;
+
+    static {
+        Random random = new Random(0x5EED_C0DEL);
+        for (int kind = 0; kind < 4; kind++) {
+            for (int i = 0; i < 64; i++) {
+                PIECES[kind][i] = random.nextLong();
+            }
+        }
+        SIDE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    public static long piece(int kind, int index) {
+        return PIECES[kind][index];
+    }
+
+    public static int kind(Board.Player player, boolean king) {
+        if (player == Board.Player.RED) {
+            return king ? RED_KING : RED_MAN;
+        } else {
+            return king ? WHITE_KING : WHITE_MAN;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package gui;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for one BotMoveService task, from the moment the
+ * bot starts thinking until its move is handed back to the GUI.
+ */
+
+@Name("checkers.BotMove")
+@Label("Bot Move")
+@Category({"Checkers", "GUI"})
+@Description("A bot choosing a move on a BotMoveService thread")
+class BotMoveEvent extends Event {
+
+    @Label("Agent")
+    String agent;
+
+    @Label("Player")
+    String player;
+
+    @Label("Board Size")
+    int boardSize;
+
+    @Label("Move")
+    String move;
+}
@@ -5,6 +5,8 @@ import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 
 import ai.Agent;
+import ai.AlphaBetaAI;
+import ai.CancellationToken;
 import checkers.Board;
 
 // Because we're putting the code to handle the bot thinking
@@ -20,6 +22,20 @@ public class BotMoveService extends Service<Move> {
         this.bot = bot;
     }
 
+    // Lets the bot think on the opponent's time, if it knows how. Called
+    // after the bot's move, once the opponent has the turn.
+    public void ponder() {
+        if (bot instanceof AlphaBetaAI) {
+            ((AlphaBetaAI) bot).startPondering(gameboard);
+        }
+    }
+
+    public void stopPondering() {
+        if (bot instanceof AlphaBetaAI) {
+            ((AlphaBetaAI) bot).stopPondering();
+        }
+    }
+
     @Override
     protected Task<Move> createTask() {
         return new BotMoveTask(gameboard, bot);
@@ -29,20 +45,36 @@ public class BotMoveService extends Service<Move> {
 
         Board gameboard;
         Agent bot;
+        CancellationToken token;
 
         public BotMoveTask(Board gameboard, Agent bot) {
             this.gameboard = gameboard;
             this.bot = bot;
+            this.token = new CancellationToken();
         }
 
+        // Service.cancel() ends up here. The search stops at its next
+        // check instead of running on after the game has been left.
         @Override
-        protected Move call() throws Exception {
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            token.cancel();
+            return super.cancel(mayInterruptIfRunning);
+        }
 
-            Move move = bot.chooseMove(gameboard);
-            // This sleep statement is the only reason
-            // why the RandomAI has to have its own Task.
-            Thread.sleep(200);
+        @Override
+        protected Move call() throws Exception {
 
+            BotMoveEvent event = new BotMoveEvent();
+            event.begin();
+            Move move = bot.chooseMove(gameboard, token, Agent.NO_DEADLINE);
+            event.end();
+            if (event.shouldCommit()) {
+                event.agent = bot.getClass().getSimpleName();
+                event.player = gameboard.getTurn().toString();
+                event.boardSize = gameboard.getSize();
+                event.move = move == null ? null : move.toString();
+                event.commit();
+            }
             return move;
 
         }
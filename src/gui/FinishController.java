@@ -28,13 +28,15 @@ public class FinishController {
     private int[] options;
     private boolean[] timed;
     private StaticEval[] evals;
+    private int[] threads;
+    private boolean fast;
 
     // The Finish screen needs to know who won and the final board state to set as
     // the background. It also needs to know who played as X and O and what size the
     // board was, in case the user wants to play again with the same settings.
     public void setOptions(Player won, Image image, boolean humanWon, int size,
                            AgentType[] players, String[] botTypes, int[] options,
-                           boolean[] timed, StaticEval[] evals) {
+                           boolean[] timed, StaticEval[] evals, int[] threads, boolean fast) {
 
         this.players = players;
         this.size = size;
@@ -42,6 +44,8 @@ public class FinishController {
         this.options = options;
         this.timed = timed;
         this.evals = evals;
+        this.threads = threads;
+        this.fast = fast;
 
         if (humanWon) {
             vbox.setStyle("-fx-background-color: rgba(200, 255, 200, 0.8); -fx-font: 24 system;");
@@ -69,7 +73,7 @@ public class FinishController {
         window.setScene(playScene);
 
         playController.setOptions(players, botTypes, size,
-                options, timed, evals);
+                options, timed, evals, threads, fast);
     }
 
     @FXML private void backToStart(ActionEvent e) throws Exception {
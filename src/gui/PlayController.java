@@ -3,13 +3,13 @@ package gui;
 import ai.Agent;
 import ai.AlphaBetaAI;
 import ai.RandomAI;
+import ai.SearchStats;
 import checkers.Move;
 import checkers.Piece;
 import checkers.Square;
-import javafx.concurrent.Service;
-import javafx.concurrent.Task;
-import javafx.concurrent.WorkerStateEvent;
-import javafx.event.EventHandler;
+import javafx.animation.AnimationTimer;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
@@ -18,11 +18,12 @@ import javafx.scene.Scene;
 import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
 import javafx.scene.image.Image;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
-import javafx.scene.paint.Color;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import static gui.Main.X_DIM;
 import static gui.Main.Y_DIM;
@@ -35,8 +36,15 @@ import java.util.List;
 
 public class PlayController {
 
+    // The squares never change, so they're drawn once on a layer of their
+    // own, under the canvas with the pieces. After that only the squares a
+    // move changed are repainted, with pre-rendered sprites.
+    @FXML private Canvas boardLayer;
     @FXML private Canvas canvas;
+    @FXML private Label statsOverlay;
     private GraphicsContext gc;
+    private Sprites sprites;
+    private int squareLength;
     private Board gameboard;
     private int clickCount;
     private List<Move> currentLegals;
@@ -48,6 +56,18 @@ public class PlayController {
     private boolean[] timed;
     private int[] options; // depthOne, timeLimitOne, depthTwo, timeLimitTwo;
     private StaticEval[] evals;
+    private int[] threads;
+
+    // Pacing is only a matter of presentation: each move stays on screen
+    // for a moment before the next one is shown, but the next search
+    // starts right away. In fast mode, moves are applied as they arrive
+    // and the squares they changed are repainted at most once a frame.
+    private static final long MOVE_DISPLAY_NANOS = 200_000_000L;
+    private static final Duration FINISH_DELAY = Duration.seconds(1);
+    private boolean fast;
+    private long lastMoveShown;
+    private final List<Square> dirtySquares = new ArrayList<>();
+    private AnimationTimer redrawTimer;
 
     // Sets who is playing: HvH, HvB, or BvB, and the human's player.
     // Then starts the game.
@@ -56,7 +76,8 @@ public class PlayController {
     // we need so much information from the Start screen before the
     // Play screen can do anything.
     public void setOptions(AgentType[] players, String[] botTypes, int size,
-                           int[] options, boolean[] timed, StaticEval[] evals) {
+                           int[] options, boolean[] timed, StaticEval[] evals, int[] threads,
+                           boolean fast) {
 
         canvas.requestFocus();
 
@@ -65,6 +86,8 @@ public class PlayController {
         this.options = options;
         this.timed = timed;
         this.evals = evals;
+        this.threads = threads;
+        this.fast = fast;
 
         gameboard = new Board(size);
         gameboard.setPlayer(Player.RED, players[0]);
@@ -72,29 +95,43 @@ public class PlayController {
 
         // This is where we'll draw the game as it progresses.
         gc = canvas.getGraphicsContext2D();
-        gc.setFill(Color.WHITE);
-        gc.setStroke(Color.BLACK);
-        gc.setLineWidth(5);
+        squareLength = X_DIM/size;
+        sprites = Sprites.forSquare(squareLength);
         drawBoard();
         clickCount = 0;
+        if (fast) {
+            redrawTimer = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    redrawIfDirty();
+                }
+            };
+            redrawTimer.start();
+        }
 
         bots = new Agent[2];
         if (botTypes[0].equals("Random AI")) {
             bots[0] = new RandomAI();
         } else if (botTypes[0].equals("Alpha-Beta AI")) {
-            bots[0] = new AlphaBetaAI(options[0], timed[0], evals[0]);
+            AlphaBetaAI bot = new AlphaBetaAI(options[0], timed[0], evals[0]);
+            bot.setThreads(threads[0]);
+            bot.addSearchListener(stats -> showStats(Player.RED, stats));
+            bots[0] = bot;
         }
         if (botTypes[1].equals("Random AI")) {
             bots[1] = new RandomAI();
         } else if (botTypes[1].equals("Alpha-Beta AI")) {
-            bots[1] = new AlphaBetaAI(options[1], timed[1], evals[1]);
+            AlphaBetaAI bot = new AlphaBetaAI(options[1], timed[1], evals[1]);
+            bot.setThreads(threads[1]);
+            bot.addSearchListener(stats -> showStats(Player.WHITE, stats));
+            bots[1] = bot;
         }
 
         // How to handle bot moves.
         redMoveHandler = new BotMoveService(gameboard, bots[0]);
-        botSetup(redMoveHandler);
+        botSetup(redMoveHandler, Player.RED);
         whiteMoveHandler = new BotMoveService(gameboard, bots[1]);
-        botSetup(whiteMoveHandler);
+        botSetup(whiteMoveHandler, Player.WHITE);
 
         // How to handle human moves.
         canvas.setOnMouseClicked(e -> {
@@ -119,10 +156,11 @@ public class PlayController {
                     clickCount++;
                     for (Move m : currentLegals) {
                         Square dest = m.getDestination();
-                        drawSquare(dest.getX(), dest.getY());
+                        drawSquare(dest);
                         if (dest.getX() == x && dest.getY() == y) {
                             gameboard.applyMove(m);
-                            drawMove(m, gameboard.getTurn());
+                            drawMove(m);
+                            lastMoveShown = System.nanoTime();
                             // If a bot move comes next and the game isn't over, handle it.
                             if (gameboard.isOver()) {
                                 transitionToFinish();
@@ -141,18 +179,19 @@ public class PlayController {
         }
     }
 
-    private void botSetup(BotMoveService service) {
+    private void botSetup(BotMoveService service, Player player) {
         service.setOnSucceeded(e -> {
             Move move = service.getValue();
-            gameboard.applyMove(move);
-            drawMove(move, gameboard.getTurn());
-
-            if (gameboard.isOver()) {
-                if (!gameboard.isHalted()) {
-                    transitionToFinish();
-                }
+            if (service.bot instanceof AlphaBetaAI) {
+                showStats(player, ((AlphaBetaAI) service.bot).getLastStats());
+            }
+            long wait = lastMoveShown + MOVE_DISPLAY_NANOS - System.nanoTime();
+            if (fast || wait <= 0) {
+                showBotMove(service, move);
             } else {
-                botMove();
+                PauseTransition pause = new PauseTransition(Duration.millis(wait / 1e6));
+                pause.setOnFinished(event -> showBotMove(service, move));
+                pause.play();
             }
         });
         service.setOnFailed(e -> {
@@ -160,6 +199,56 @@ public class PlayController {
         });
     }
 
+    // Applies a bot's move and lets the game go on.
+    private void showBotMove(BotMoveService service, Move move) {
+        if (gameboard.isHalted()) {
+            return;
+        }
+        gameboard.applyMove(move);
+        if (fast) {
+            dirtySquares.add(move.getOrigin());
+            dirtySquares.addAll(move.getCaptures());
+            dirtySquares.add(move.getDestination());
+        } else {
+            drawMove(move);
+        }
+        lastMoveShown = System.nanoTime();
+
+        if (gameboard.isOver()) {
+            transitionToFinish();
+        } else if (gameboard.whoHasTheTurn() == AgentType.HUMAN) {
+            // The bot's CPU would sit idle while the human thinks.
+            service.ponder();
+        } else {
+            botMove();
+        }
+    }
+
+    private void redrawIfDirty() {
+        for (Square square : dirtySquares) {
+            drawSquare(square);
+        }
+        dirtySquares.clear();
+    }
+
+    private void stopRedrawing() {
+        if (redrawTimer != null) {
+            redrawTimer.stop();
+        }
+        redrawIfDirty();
+    }
+
+    // Shows a bot's search statistics in the overlay. Listeners are called
+    // on the search thread, which may be pondering on the opponent's turn,
+    // so the bot's colour is passed in rather than read from the board and
+    // the label is updated on the FX thread.
+    private void showStats(Player player, SearchStats stats) {
+        if (stats != null) {
+            String text = player + "\n" + stats;
+            Platform.runLater(() -> statsOverlay.setText(text));
+        }
+    }
+
     // Applies a bot move, if necessary.
     private void botMove() {
         // If the bot needs to make a move, then let it.
@@ -172,122 +261,99 @@ public class PlayController {
         }
     }
 
-    private void drawSquare(int x, int y) {
-        if ((x + y) % 2 == 0) {
-            gc.setFill(Color.web("#CAB7A8"));
-        } else {
-            gc.setFill(Color.web("#6A4E4B"));
+    // Repaints a square of the piece layer as the board has it now.
+    private void drawSquare(Square square) {
+        int x = square.getX();
+        int y = square.getY();
+        gc.clearRect(x*squareLength, y*squareLength, squareLength, squareLength);
+        Piece p = gameboard.getSquare(x, y).getContents();
+        if (p != null) {
+            gc.drawImage(sprites.getPiece(p.getPlayer(), p.getType()), x*squareLength, y*squareLength);
         }
-        int squareLength = X_DIM/gameboard.getSize();
-        gc.fillRect(x*squareLength, y*squareLength, squareLength, squareLength);
     }
 
-    // TODO: implement
     private void drawBoard() {
+        GraphicsContext boardGc = boardLayer.getGraphicsContext2D();
         int s = gameboard.getSize();
         for (int i = 0; i < s; i++) {
             for (int j = 0; j < s; j++) {
-                drawSquare(j, i);
-                Piece p = gameboard.getSquare(j, i).getContents();
-                if (p != null) {
-                    drawPiece(gameboard.getSquare(j,i), p.getPlayer(), p.getType());
-                }
+                boardGc.setFill((i + j) % 2 == 0 ? Sprites.LIGHT_SQUARE : Sprites.DARK_SQUARE);
+                boardGc.fillRect(j*squareLength, i*squareLength, squareLength, squareLength);
+                drawSquare(gameboard.getSquare(j, i));
             }
         }
     }
 
     // The move must be drawn *after* the move is carried out.
-    private void drawMove(Move move, Player player) {
-        // erase the piece from the origin square, all captures, and the shown conditional moves.
-        drawSquare(move.getOrigin().getX(), move.getOrigin().getY());
+    private void drawMove(Move move) {
+        // erase the piece from the origin square and all captures, and show it on its destination.
+        drawSquare(move.getOrigin());
         for (Square c : move.getCaptures()) {
-            drawSquare(c.getX(), c.getY());
+            drawSquare(c);
         }
-        Piece p = move.getDestination().getContents();
-        drawPiece(move.getDestination(), p.getPlayer(), p.getType());
+        drawSquare(move.getDestination());
     }
 
-    private void drawPiece(Square square, Player player, Piece.Type type) {
-        if (player == Player.RED) {
-            gc.setFill(Color.web("#cc0000"));
+    private void drawPotential(Square square) {
+        gc.drawImage(sprites.getPotential(), square.getX()*squareLength, square.getY()*squareLength);
+    }
+
+    // Execute this code when the game ends. Unless we're in fast mode,
+    // the final position stays up for a second before the finish screen.
+    private void transitionToFinish() {
+        redMoveHandler.stopPondering();
+        whiteMoveHandler.stopPondering();
+        stopRedrawing();
+        if (fast) {
+            showFinish();
         } else {
-            gc.setFill(Color.web("#f2f2f2"));
-        }
-        int x = square.getX();
-        int y = square.getY();
-        int s = gameboard.getSize();
-        int squareLength = X_DIM/s;
-        gc.fillOval(x*squareLength + (squareLength/9), y*squareLength + (squareLength/9),
-                7*squareLength/9, 7*squareLength/9);
-        if (type == Piece.Type.KING) {
-            gc.drawImage(new Image("resources/crown.png"),
-                    x*squareLength + (squareLength/5), y*squareLength + (squareLength/5),
-                    3*squareLength/5, 3*squareLength/5);
+            PauseTransition pause = new PauseTransition(FINISH_DELAY);
+            pause.setOnFinished(event -> showFinish());
+            pause.play();
         }
     }
 
-    private void drawPotential(Square square) {
-        int x = square.getX();
-        int y = square.getY();
-        int squareLength = X_DIM/gameboard.getSize();
-        gc.setFill(Color.web("#33cc33"));
-        gc.fillOval(x*squareLength + (squareLength/3), y*squareLength + (squareLength/3),
-                squareLength/3, squareLength/3);
-    }
+    private void showFinish() {
+        // 1. Take a picture of the final board state, both layers of it
+        // but not the statistics, to use as a background to the finish scene.
+        statsOverlay.setVisible(false);
+        Image finalState = canvas.getParent().snapshot(new SnapshotParameters(), null);
 
-    // Execute this code when the game ends. We need to do the song and dance
-    // with a new Service in order to add a one second pause.
-    private void transitionToFinish() {
-        Service<Void> pause = new Service<Void>() {
-            @Override
-            protected Task<Void> createTask() {
-                return new Task<Void>() {
-                    @Override
-                    protected Void call() throws Exception {
-                        Thread.sleep(1000);
-                        return null;
-                    }
-                };
-            }
-        };
-        pause.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
-            @Override
-            public void handle(WorkerStateEvent event) {
-                // 1. Take a picture of the final board state,
-                // to use as a background to the finish scene.
-                Image finalState = canvas.snapshot(new SnapshotParameters(), null);
-
-                FXMLLoader loader = new FXMLLoader();
-                loader.setLocation(getClass().getResource("Finish.fxml"));
-
-                // 2. If a human won the game, make the finish background green.
-                Player winner = gameboard.findWinner();
-                boolean humanWon = (winner == Player.RED && players[0] == AgentType.HUMAN) ||
-                        (winner == Player.WHITE && players[1] == AgentType.HUMAN);
-
-                // 3. Let the finish controller know who won the game and what to use as a background.
-                Parent finishParent;
-                try {
-                    finishParent = loader.load();
-                } catch (Exception exception) {
-                    finishParent = null;
-                }
-                FinishController finishController = loader.getController();
-                finishController.setOptions(winner, finalState, humanWon, gameboard.getSize(),
-                        players, botTypes, options, timed, evals);
-
-                // 4. Display the finish scene in the window.
-                Scene finishScene = new Scene(finishParent);
-                Stage window = (Stage) canvas.getScene().getWindow();
-                window.setScene(finishScene);
-            }
-        });
-        pause.restart();
+        FXMLLoader loader = new FXMLLoader();
+        loader.setLocation(getClass().getResource("Finish.fxml"));
+
+        // 2. If a human won the game, make the finish background green.
+        Player winner = gameboard.findWinner();
+        boolean humanWon = (winner == Player.RED && players[0] == AgentType.HUMAN) ||
+                (winner == Player.WHITE && players[1] == AgentType.HUMAN);
+
+        // 3. Let the finish controller know who won the game and what to use as a background.
+        Parent finishParent;
+        try {
+            finishParent = loader.load();
+        } catch (Exception exception) {
+            finishParent = null;
+        }
+        FinishController finishController = loader.getController();
+        finishController.setOptions(winner, finalState, humanWon, gameboard.getSize(),
+                players, botTypes, options, timed, evals, threads, fast);
+
+        // 4. Display the finish scene in the window.
+        Scene finishScene = new Scene(finishParent);
+        Stage window = (Stage) canvas.getScene().getWindow();
+        window.setScene(finishScene);
     }
 
     @FXML private void handleKeyPressed(KeyEvent e) throws Exception {
         if (e.getCode() == KeyCode.ESCAPE) {
             gameboard.halt();
+            redMoveHandler.cancel();
+            whiteMoveHandler.cancel();
+            redMoveHandler.stopPondering();
+            whiteMoveHandler.stopPondering();
+            if (redrawTimer != null) {
+                redrawTimer.stop();
+            }
             FXMLLoader loader = new FXMLLoader();
             loader.setLocation(getClass().getResource("Start.fxml"));
             Parent startParent = loader.load();
@@ -295,6 +361,8 @@ public class PlayController {
             Scene startScene = new Scene(startParent);
             Stage window = (Stage) ((Node) e.getSource()).getScene().getWindow();
             window.setScene(startScene);
+        } else if (e.getCode() == KeyCode.S) {
+            statsOverlay.setVisible(!statsOverlay.isVisible());
         }
     }
 
@@ -0,0 +1,96 @@
+package gui;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import checkers.Board.*;
+import checkers.Piece;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+/**
+ * Everything the play screen draws, rendered ahead of time: the colours,
+ * the crown, and for each square size an image of every kind of piece
+ * and of the marker for a possible move, each one square in size with a
+ * transparent background. Drawing a piece is then a single drawImage.
+ *
+ * Sprites are made with Node.snapshot, so like everything else here they
+ * must be used on the FX thread.
+ */
+
+class Sprites {
+
+    static final Color LIGHT_SQUARE = Color.web("#CAB7A8");
+    static final Color DARK_SQUARE = Color.web("#6A4E4B");
+    static final Color RED_PIECE = Color.web("#cc0000");
+    static final Color WHITE_PIECE = Color.web("#f2f2f2");
+    static final Color POTENTIAL = Color.web("#33cc33");
+
+    // Only ever touched on the FX thread.
+    private static Image crown;
+    private static final Map<Integer, Sprites> cache = new HashMap<>();
+
+    private final int squareLength;
+    // Indexed by player, then by piece type.
+    private final Image[][] pieces = new Image[2][2];
+    private final Image potential;
+
+    private Sprites(int squareLength) {
+        this.squareLength = squareLength;
+        for (Player player : Player.values()) {
+            for (Piece.Type type : Piece.Type.values()) {
+                pieces[player.ordinal()][type.ordinal()] = render(gc -> drawPiece(gc, player, type));
+            }
+        }
+        potential = render(this::drawPotential);
+    }
+
+    // The sprites for squares of the given length, made the first time they're asked for.
+    static Sprites forSquare(int squareLength) {
+        return cache.computeIfAbsent(squareLength, Sprites::new);
+    }
+
+    Image getPiece(Player player, Piece.Type type) {
+        return pieces[player.ordinal()][type.ordinal()];
+    }
+
+    Image getPotential() {
+        return potential;
+    }
+
+    private static Image getCrown() {
+        if (crown == null) {
+            crown = new Image("resources/crown.png");
+        }
+        return crown;
+    }
+
+    private interface Painter {
+        void paint(GraphicsContext gc);
+    }
+
+    // Paints one square's worth on a scratch canvas and keeps it as an image.
+    private Image render(Painter painter) {
+        Canvas scratch = new Canvas(squareLength, squareLength);
+        painter.paint(scratch.getGraphicsContext2D());
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        return scratch.snapshot(parameters, null);
+    }
+
+    private void drawPiece(GraphicsContext gc, Player player, Piece.Type type) {
+        gc.setFill(player == Player.RED ? RED_PIECE : WHITE_PIECE);
+        gc.fillOval(squareLength/9, squareLength/9, 7*squareLength/9, 7*squareLength/9);
+        if (type == Piece.Type.KING) {
+            gc.drawImage(getCrown(), squareLength/5, squareLength/5, 3*squareLength/5, 3*squareLength/5);
+        }
+    }
+
+    private void drawPotential(GraphicsContext gc) {
+        gc.setFill(POTENTIAL);
+        gc.fillOval(squareLength/3, squareLength/3, squareLength/3, squareLength/3);
+    }
+}
@@ -30,6 +30,11 @@ public class StartController {
     @FXML private ChoiceBox<String> alphaBetaEvalOne;
     @FXML private ChoiceBox<String> alphaBetaEvalTwo;
 
+    @FXML private ChoiceBox<Integer> threadsOne;
+    @FXML private ChoiceBox<Integer> threadsTwo;
+
+    @FXML private CheckBox fastMode;
+
     @FXML private ToggleGroup depthOrStrengthOne = new ToggleGroup();
     @FXML private RadioButton depthOne;
     @FXML private RadioButton timeOne;
@@ -61,10 +66,19 @@ public class StartController {
         alphaBetaEvalTwo.getItems().addAll("Basic Piece Value", "Positional Piece Value");
         alphaBetaEvalTwo.setValue("Basic Piece Value");
 
+        // Offer powers of two up to the number of cores on this machine.
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int n = 1; n <= cores; n *= 2) {
+            threadsOne.getItems().add(n);
+            threadsTwo.getItems().add(n);
+        }
+        threadsOne.setValue(1);
+        threadsTwo.setValue(1);
+
         StringProperty alphaBetaSelected = new SimpleStringProperty("Alpha-Beta AI");
 
-        Control[] controlsOne = {depthOne, timeOne, strengthSliderOne, alphaBetaEvalOne};
-        Control[] controlsTwo = {depthTwo, timeTwo, strengthSliderTwo, alphaBetaEvalTwo};
+        Control[] controlsOne = {depthOne, timeOne, strengthSliderOne, alphaBetaEvalOne, threadsOne};
+        Control[] controlsTwo = {depthTwo, timeTwo, strengthSliderTwo, alphaBetaEvalTwo, threadsTwo};
 
         for (Control c : controlsOne) {
             c.disableProperty().bind(playerOne.valueProperty().isNotEqualTo(alphaBetaSelected));
@@ -106,6 +120,8 @@ public class StartController {
 
         boolean[] timed = {timeOne.isSelected(), timeTwo.isSelected()};
 
+        int[] threads = {threadsOne.getValue(), threadsTwo.getValue()};
+
         StaticEval[] evals = new StaticEval[2];
 
         if (alphaBetaEvalOne.getValue().equals("Basic Piece Value")) {
@@ -129,7 +145,8 @@ public class StartController {
         Stage window = (Stage) ((Node) e.getSource()).getScene().getWindow();
         window.setScene(playScene);
 
-        playController.setOptions(players, botTypes, size, options, timed, evals);
+        playController.setOptions(players, botTypes, size, options, timed, evals, threads,
+                fastMode.isSelected());
     }
 
     // Switch to "About" scene when the user presses the "About" button.
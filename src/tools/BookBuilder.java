@@ -0,0 +1,214 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ai.AlphaBetaAI;
+import ai.AlphaBetaAI.StaticEval;
+import ai.OpeningBook;
+import checkers.BitBoard;
+import checkers.Board;
+import checkers.Board.*;
+import checkers.Move;
+
+/**
+ * Builds the opening book that ai.OpeningBook reads.
+ *
+ *   java tools.BookBuilder size positions [depth] [threads] [directory] [--maximal]
+ *
+ * The book tree is grown by drop-out expansion. Every leaf of the tree has
+ * a score from a deep search, and inner nodes take the minimax of their
+ * children. The next leaf to expand is the one with the lowest priority,
+ * where a leaf's priority is its depth times DROPOUT plus, for every move
+ * on the way to it, how much worse that move scored than the best move
+ * there. So the book goes deep along the best lines and only a little
+ * way into the bad ones. Expanding a leaf searches all of its children in
+ * parallel, one search per thread.
+ *
+ * The book holds the best move of every expanded position.
+ */
+
+public class BookBuilder {
+
+    // Score difference that is worth one ply of book depth: about a man.
+    private static final int DROPOUT = 80;
+
+    private int size;
+    private boolean maximalCapturesOnly;
+    private ExecutorService pool;
+    private ThreadLocal<AlphaBetaAI> searchers;
+
+    public BookBuilder(int size, int depth, boolean maximalCapturesOnly, int threads) {
+        this.size = size;
+        this.maximalCapturesOnly = maximalCapturesOnly;
+        this.pool = Executors.newFixedThreadPool(threads);
+        // Each thread keeps its own agent, and with it its transposition table.
+        this.searchers = ThreadLocal.withInitial(() -> {
+            AlphaBetaAI searcher = new AlphaBetaAI(depth, false, StaticEval.POSITIONAL_PIECEVALUE, 64);
+            searcher.setOpeningBook(null);
+            return searcher;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BookBuilder size positions [depth] [threads] [directory] [--maximal]");
+            System.exit(1);
+        }
+        int size = Integer.parseInt(args[0]);
+        int positions = Integer.parseInt(args[1]);
+        int depth = 10;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path root = Paths.get("book");
+        boolean maximal = false;
+        int position = 0;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--maximal")) {
+                maximal = true;
+            } else if (position == 0) {
+                depth = Integer.parseInt(args[i]);
+                position++;
+            } else if (position == 1) {
+                threads = Integer.parseInt(args[i]);
+                position++;
+            } else {
+                root = Paths.get(args[i]);
+            }
+        }
+        BookBuilder builder = new BookBuilder(size, depth, maximal, threads);
+        try {
+            builder.build(positions, root.resolve(size + ".book"));
+        } finally {
+            builder.pool.shutdown();
+        }
+    }
+
+    // Expands the given number of positions and writes the book.
+    public void build(int positions, Path path) throws IOException, InterruptedException, ExecutionException {
+        Board start = new Board(size);
+        start.setMaximalCapturesOnly(maximalCapturesOnly);
+        Node root = new Node(start, null, null);
+        root.score = searchers.get().evaluate(start);
+
+        long begin = System.nanoTime();
+        for (int expanded = 0; expanded < positions; expanded++) {
+            Node leaf = nextLeaf(root);
+            if (leaf == null) {
+                break;
+            }
+            expand(leaf);
+            if ((expanded + 1) % 10 == 0) {
+                System.out.printf("%d positions expanded, root score %d, %.1fs%n",
+                        expanded + 1, root.score, (System.nanoTime() - begin) / 1e9);
+            }
+        }
+
+        // The same position can be reached in more than one way; the first
+        // one found is kept. A TreeMap sorts the keys the way the book needs.
+        TreeMap<Long, Long> book = new TreeMap<>();
+        collect(root, book);
+        long[] keys = new long[book.size()];
+        long[] moves = new long[book.size()];
+        int i = 0;
+        for (Map.Entry<Long, Long> e : book.entrySet()) {
+            keys[i] = e.getKey();
+            moves[i] = e.getValue();
+            i++;
+        }
+        OpeningBook.write(path, size, maximalCapturesOnly, keys, moves);
+        System.out.println("Wrote " + keys.length + " positions to " + path);
+    }
+
+    // The leaf with the lowest drop-out priority, or null if every leaf is a finished game.
+    private Node nextLeaf(Node root) {
+        Node[] best = new Node[1];
+        double[] bestPriority = {Double.MAX_VALUE};
+        visit(root, 0, 0, best, bestPriority);
+        return best[0];
+    }
+
+    private void visit(Node node, int ply, double deviation, Node[] best, double[] bestPriority) {
+        if (node.children == null) {
+            double priority = ply + deviation / DROPOUT;
+            if (!node.board.isOver() && priority < bestPriority[0]) {
+                best[0] = node;
+                bestPriority[0] = priority;
+            }
+            return;
+        }
+        boolean red = node.board.getTurn() == Player.RED;
+        for (Node child : node.children) {
+            int loss = red ? node.score - child.score : child.score - node.score;
+            visit(child, ply + 1, deviation + loss, best, bestPriority);
+        }
+    }
+
+    // Searches every child of the leaf in parallel, then backs the scores up the tree.
+    private void expand(Node leaf) throws InterruptedException, ExecutionException {
+        List<Node> children = new ArrayList<>();
+        List<Callable<Integer>> searches = new ArrayList<>();
+        for (Move m : leaf.board.getLegalMoves()) {
+            Board next = leaf.board.copy();
+            next.applyMove(next.transferMove(m));
+            Node child = new Node(next, leaf, m);
+            children.add(child);
+            searches.add(() -> searchers.get().evaluate(next));
+        }
+        List<Future<Integer>> scores = pool.invokeAll(searches);
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).score = scores.get(i).get();
+        }
+        leaf.children = children;
+        for (Node n = leaf; n != null; n = n.parent) {
+            n.score = bestChild(n).score;
+        }
+    }
+
+    private static Node bestChild(Node node) {
+        boolean red = node.board.getTurn() == Player.RED;
+        Node best = null;
+        for (Node child : node.children) {
+            if (best == null || (red ? child.score > best.score : child.score < best.score)) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private static void collect(Node node, Map<Long, Long> book) {
+        if (node.children == null) {
+            return;
+        }
+        BitBoard position = new BitBoard(node.board);
+        book.putIfAbsent(position.getHash(), position.fromMove(bestChild(node).move));
+        for (Node child : node.children) {
+            collect(child, book);
+        }
+    }
+
+    private static class Node {
+
+        private final Board board;
+        private final Node parent;
+        private final Move move;
+        private List<Node> children;
+        // From red's point of view.
+        private int score;
+
+        Node(Board board, Node parent, Move move) {
+            this.board = board;
+            this.parent = parent;
+            this.move = move;
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import checkers.BitBoard;
+import checkers.Board;
+import checkers.Board.*;
+import checkers.Move;
+import checkers.MoveList;
+import checkers.Piece;
+import checkers.Square;
+import checkers.UndoRecord;
+
+/**
+ * Counts the positions reachable in exactly n plies (perft) from a set of
+ * start and test positions, to check and time the move generators.
+ *
+ *   java tools.Perft [options]
+ *     --position name   only this position (default: all of them)
+ *     --depth n         search this deep (default: each position's own depth)
+ *     --bitboard        count with BitBoard instead of Board
+ *     --threads n       count in parallel on a fork/join pool
+ *     --diff            walk Board and BitBoard in lockstep and compare them
+ *     --maximal         use the maximal-captures-only rule
+ *
+ * Every position comes with the counts Board gave when it was added, so a
+ * run also checks that a change to move generation didn't change the rules.
+ * A count that doesn't match is reported and the exit status is 1.
+ *
+ * The differential mode compares the legal moves, the pieces and the
+ * winner of the two implementations at every node, and after every undo.
+ * Another implementation can be checked the same way by implementing
+ * Perft.Position for it.
+ */
+
+public class Perft {
+
+    // Below this depth, a parallel count goes on sequentially.
+    private static final int MIN_SPLIT_DEPTH = 3;
+
+    // Rows from the top of the board, with r/w for men and R/W for kings.
+    // The first line is the side to move. The expected counts are for
+    // depths 1, 2, 3, ... with every prefix of a capture chain a move.
+    private static final TestPosition[] POSITIONS = {
+        new TestPosition("start6", 8, startRows(6),
+                new long[]{5, 25, 141, 770, 4222, 22599, 118535, 610154}),
+        new TestPosition("start8", 7, startRows(8),
+                new long[]{7, 49, 379, 2872, 23582, 190647, 1607272}),
+        new TestPosition("start10", 6, startRows(10),
+                new long[]{9, 81, 793, 7654, 79010, 805413}),
+        new TestPosition("mixed6", 7, new String[]{
+                "W",
+                ".w.w..",
+                "......",
+                ".r.W.w",
+                "r.r...",
+                "...R.r",
+                "......"}, new long[]{9, 57, 325, 1763, 9245, 49024, 245198}),
+        new TestPosition("kings8", 6, new String[]{
+                "R",
+                "........",
+                "..w.w...",
+                "...R....",
+                "..w.w.w.",
+                "........",
+                "..w.w...",
+                ".r...W..",
+                "r.r....."}, new long[]{17, 199, 1738, 18059, 133789, 1281601}),
+        new TestPosition("open10", 5, new String[]{
+                "W",
+                ".w.w.w....",
+                "..........",
+                "...w.R....",
+                "....r.r...",
+                "...W......",
+                "..r.r.r...",
+                "..........",
+                "....W.....",
+                ".r.r.r....",
+                ".........."}, new long[]{19, 274, 4362, 57760, 828243}),
+    };
+
+    /**
+     * One board implementation, as seen by perft. Moves are named in a
+     * notation every implementation can produce, so that two of them
+     * can be compared move by move.
+     */
+    public interface Position {
+
+        // Names of the legal moves of the side to move, in any order.
+        List<String> legalMoves();
+
+        // Plays the named legal move and returns what undo needs to take it back.
+        Object apply(String move);
+
+        void undo(Object token);
+
+        // The pieces and the side to move, written the same way by every implementation.
+        String describe();
+
+        Player findWinner();
+    }
+
+    public static void main(String[] args) {
+        String only = null;
+        int depth = 0;
+        int threads = 1;
+        boolean bitboard = false;
+        boolean diff = false;
+        boolean maximal = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--position": only = args[++i]; break;
+                case "--depth": depth = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--bitboard": bitboard = true; break;
+                case "--diff": diff = true; break;
+                case "--maximal": maximal = true; break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        boolean ok = true;
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        for (TestPosition test : POSITIONS) {
+            if (only != null && !only.equals(test.name)) {
+                continue;
+            }
+            Board board = test.toBoard();
+            board.setMaximalCapturesOnly(maximal);
+            int maxDepth = depth > 0 ? depth : test.depth;
+            System.out.println(test.name + (diff ? " (Board against BitBoard)" : bitboard ? " (BitBoard)" : " (Board)"));
+            for (int d = 1; d <= maxDepth; d++) {
+                long start = System.nanoTime();
+                long nodes;
+                if (diff) {
+                    nodes = diff(new BoardPosition(board), new BitBoardPosition(new BitBoard(board)), d);
+                } else if (pool != null) {
+                    PerftTask task = bitboard ? new PerftTask(null, new BitBoard(board), d) :
+                            new PerftTask(board.copy(), null, d);
+                    nodes = pool.invoke(task);
+                } else if (bitboard) {
+                    nodes = perft(new BitBoard(board), d, newMoveLists(d));
+                } else {
+                    nodes = perft(board, d);
+                }
+                long nanos = Math.max(1, System.nanoTime() - start);
+                String check = "";
+                if (!maximal && d <= test.expected.length) {
+                    boolean match = test.expected[d - 1] == nodes;
+                    ok &= match;
+                    check = match ? "  ok" : "  EXPECTED " + test.expected[d - 1];
+                }
+                System.out.printf("  depth %2d  %,15d nodes  %8.3fs  %,12.0f nodes/s%s%n",
+                        d, nodes, nanos / 1e9, nodes * 1e9 / nanos, check);
+            }
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    public static long perft(Board board, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        List<Move> moves = board.getLegalMoves();
+        if (depth == 1) {
+            return moves.size();
+        }
+        long nodes = 0;
+        for (Move m : moves) {
+            UndoRecord record = board.applyMove(m);
+            nodes += perft(board, depth - 1);
+            board.undoMove(record);
+        }
+        return nodes;
+    }
+
+    // moves holds one preallocated list per ply.
+    public static long perft(BitBoard board, int depth, MoveList[] moves) {
+        if (depth == 0) {
+            return 1;
+        }
+        MoveList list = moves[depth];
+        list.clear();
+        board.getLegalMoves(list);
+        if (depth == 1) {
+            return list.size();
+        }
+        long nodes = 0;
+        for (int i = 0; i < list.size(); i++) {
+            long m = list.get(i);
+            long undo = board.applyMove(m);
+            nodes += perft(board, depth - 1, moves);
+            board.undoMove(m, undo);
+        }
+        return nodes;
+    }
+
+    private static MoveList[] newMoveLists(int depth) {
+        MoveList[] moves = new MoveList[depth + 1];
+        for (int i = 0; i <= depth; i++) {
+            moves[i] = new MoveList();
+        }
+        return moves;
+    }
+
+    // Walks both positions in lockstep, failing at the first difference.
+    public static long diff(Position expected, Position actual, int depth) {
+        compare(expected, actual, "");
+        return diff(expected, actual, depth, new ArrayList<>());
+    }
+
+    private static long diff(Position expected, Position actual, int depth, List<String> line) {
+        if (depth == 0) {
+            return 1;
+        }
+        List<String> moves = sorted(expected.legalMoves());
+        List<String> others = sorted(actual.legalMoves());
+        if (!moves.equals(others)) {
+            fail(line, "legal moves differ:\n  " + moves + "\n  " + others);
+        }
+        long nodes = 0;
+        for (String m : moves) {
+            String before = expected.describe();
+            line.add(m);
+            Object expectedToken = expected.apply(m);
+            Object actualToken = actual.apply(m);
+            compare(expected, actual, line.toString());
+            nodes += diff(expected, actual, depth - 1, line);
+            expected.undo(expectedToken);
+            actual.undo(actualToken);
+            line.remove(line.size() - 1);
+            if (!before.equals(expected.describe()) || !before.equals(actual.describe())) {
+                fail(line, "undoing " + m + " didn't restore the position");
+            }
+        }
+        return nodes;
+    }
+
+    private static void compare(Position expected, Position actual, String line) {
+        if (!expected.describe().equals(actual.describe())) {
+            throw new IllegalStateException("Positions differ after " + line + ":\n  " +
+                    expected.describe() + "\n  " + actual.describe());
+        }
+        if (expected.findWinner() != actual.findWinner()) {
+            throw new IllegalStateException("Winners differ after " + line);
+        }
+    }
+
+    private static void fail(List<String> line, String message) {
+        throw new IllegalStateException("After " + line + ": " + message);
+    }
+
+    private static List<String> sorted(List<String> moves) {
+        List<String> copy = new ArrayList<>(moves);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    // Squares are written x,y; a move is origin-destination followed by
+    // its captured squares in order, each after an x.
+    static String name(int fromX, int fromY, int toX, int toY, List<int[]> captures) {
+        List<String> taken = new ArrayList<>();
+        for (int[] c : captures) {
+            taken.add(c[0] + "," + c[1]);
+        }
+        Collections.sort(taken);
+        StringBuilder out = new StringBuilder();
+        out.append(fromX).append(',').append(fromY).append('-').append(toX).append(',').append(toY);
+        for (String t : taken) {
+            out.append('x').append(t);
+        }
+        return out.toString();
+    }
+
+    private static String[] startRows(int size) {
+        Board board = new Board(size);
+        String[] rows = new String[size + 1];
+        rows[0] = "R";
+        for (int y = 0; y < size; y++) {
+            StringBuilder row = new StringBuilder();
+            for (int x = 0; x < size; x++) {
+                Piece p = board.getSquare(x, y).getContents();
+                row.append(p == null ? '.' : p.getPlayer() == Player.RED ? 'r' : 'w');
+            }
+            rows[y + 1] = row.toString();
+        }
+        return rows;
+    }
+
+    private static class TestPosition {
+
+        private final String name;
+        private final int depth;
+        private final String[] rows;
+        private final long[] expected;
+
+        TestPosition(String name, int depth, String[] rows, long[] expected) {
+            this.name = name;
+            this.depth = depth;
+            this.rows = rows;
+            this.expected = expected;
+        }
+
+        Board toBoard() {
+            int size = rows.length - 1;
+            Piece[][] pieces = new Piece[size][size];
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    char c = rows[y + 1].charAt(x);
+                    if (c != '.') {
+                        Player player = Character.toLowerCase(c) == 'r' ? Player.RED : Player.WHITE;
+                        pieces[y][x] = new Piece(Piece.Type.MAN, player);
+                        if (Character.isUpperCase(c)) {
+                            pieces[y][x].kingMe();
+                        }
+                    }
+                }
+            }
+            return new Board(pieces, rows[0].equals("R") ? Player.RED : Player.WHITE);
+        }
+    }
+
+    // Counts one subtree; exactly one of board and bitBoard is set.
+    private static class PerftTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Board board;
+        private final BitBoard bitBoard;
+        private final int depth;
+
+        PerftTask(Board board, BitBoard bitBoard, int depth) {
+            this.board = board;
+            this.bitBoard = bitBoard;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            if (depth < MIN_SPLIT_DEPTH) {
+                return bitBoard != null ? perft(bitBoard, depth, newMoveLists(depth)) : perft(board, depth);
+            }
+            List<PerftTask> children = new ArrayList<>();
+            if (bitBoard != null) {
+                for (long m : bitBoard.getLegalMoves()) {
+                    BitBoard child = bitBoard.copy();
+                    child.applyMove(m);
+                    children.add(new PerftTask(null, child, depth - 1));
+                }
+            } else {
+                for (Move m : board.getLegalMoves()) {
+                    Board child = board.copy();
+                    child.applyMove(child.transferMove(m));
+                    children.add(new PerftTask(child, null, depth - 1));
+                }
+            }
+            long nodes = 0;
+            for (PerftTask task : invokeAll(children)) {
+                nodes += task.join();
+            }
+            return nodes;
+        }
+    }
+
+    private static String describe(Board board) {
+        StringBuilder out = new StringBuilder(board.getTurn() == Player.RED ? "R:" : "W:");
+        for (int y = 0; y < board.getSize(); y++) {
+            for (int x = 0; x < board.getSize(); x++) {
+                Piece p = board.getSquare(x, y).getContents();
+                if (p == null) {
+                    out.append('.');
+                } else {
+                    char c = p.getPlayer() == Player.RED ? 'r' : 'w';
+                    out.append(p.getType() == Piece.Type.KING ? Character.toUpperCase(c) : c);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    // The reference implementation.
+    public static class BoardPosition implements Position {
+
+        private final Board board;
+
+        public BoardPosition(Board board) {
+            this.board = board;
+        }
+
+        @Override
+        public List<String> legalMoves() {
+            List<String> names = new ArrayList<>();
+            for (Move m : board.getLegalMoves()) {
+                names.add(name(m));
+            }
+            return names;
+        }
+
+        @Override
+        public Object apply(String move) {
+            for (Move m : board.getLegalMoves()) {
+                if (name(m).equals(move)) {
+                    return board.applyMove(m);
+                }
+            }
+            throw new IllegalArgumentException("Not a legal move: " + move);
+        }
+
+        @Override
+        public void undo(Object token) {
+            board.undoMove((UndoRecord) token);
+        }
+
+        @Override
+        public String describe() {
+            return Perft.describe(board);
+        }
+
+        @Override
+        public Player findWinner() {
+            return board.findWinner();
+        }
+
+        private static String name(Move m) {
+            List<int[]> captures = new ArrayList<>();
+            for (Square c : m.getCaptures()) {
+                captures.add(new int[]{c.getX(), c.getY()});
+            }
+            return Perft.name(m.getOrigin().getX(), m.getOrigin().getY(),
+                    m.getDestination().getX(), m.getDestination().getY(), captures);
+        }
+    }
+
+    public static class BitBoardPosition implements Position {
+
+        private final BitBoard board;
+        private final MoveList moves;
+
+        public BitBoardPosition(BitBoard board) {
+            this.board = board;
+            this.moves = new MoveList();
+        }
+
+        @Override
+        public List<String> legalMoves() {
+            moves.clear();
+            board.getLegalMoves(moves);
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < moves.size(); i++) {
+                names.add(name(moves.get(i)));
+            }
+            return names;
+        }
+
+        @Override
+        public Object apply(String move) {
+            moves.clear();
+            board.getLegalMoves(moves);
+            for (int i = 0; i < moves.size(); i++) {
+                long m = moves.get(i);
+                if (name(m).equals(move)) {
+                    return new long[]{m, board.applyMove(m)};
+                }
+            }
+            throw new IllegalArgumentException("Not a legal move: " + move);
+        }
+
+        @Override
+        public void undo(Object token) {
+            long[] undo = (long[]) token;
+            board.undoMove(undo[0], undo[1]);
+        }
+
+        @Override
+        public String describe() {
+            StringBuilder out = new StringBuilder(board.getTurn() == Player.RED ? "R:" : "W:");
+            for (int y = 0; y < board.getSize(); y++) {
+                for (int x = 0; x < board.getSize(); x++) {
+                    if ((x + y) % 2 == 0) {
+                        out.append('.');
+                        continue;
+                    }
+                    long bit = 1L << board.index(x, y);
+                    char c = (board.getPieces(Player.RED) & bit) != 0 ? 'r' :
+                            (board.getPieces(Player.WHITE) & bit) != 0 ? 'w' : '.';
+                    out.append((board.getKings() & bit) != 0 ? Character.toUpperCase(c) : c);
+                }
+            }
+            return out.toString();
+        }
+
+        @Override
+        public Player findWinner() {
+            return board.findWinner();
+        }
+
+        private String name(long move) {
+            int from = BitBoard.getOrigin(move);
+            int to = BitBoard.getDestination(move);
+            List<int[]> captures = new ArrayList<>();
+            for (long c = board.getCaptures(move); c != 0; c &= c - 1) {
+                int i = Long.numberOfTrailingZeros(c);
+                captures.add(new int[]{board.getX(i), board.getY(i)});
+            }
+            return Perft.name(board.getX(from), board.getY(from), board.getX(to), board.getY(to), captures);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import ai.Tablebase;
+import ai.TablebaseSlice;
+import checkers.BitBoard;
+import checkers.Board;
+import checkers.Board.*;
+import checkers.MoveList;
+
+/**
+ * Builds the endgame tablebase that ai.Tablebase probes.
+ *
+ *   java tools.TablebaseGenerator size maxPieces [threads] [directory] [--maximal]
+ *
+ * Slices are solved fewest pieces first, and with the same number of pieces,
+ * fewest men first. A capture or a crowning always leads to a slice that
+ * comes earlier, so by the time a slice is solved, every other slice its
+ * moves can reach has been solved already. Slices that already have a file
+ * are read back instead of being solved again.
+ *
+ * Within a slice the values are found by iterative analysis. The first pass
+ * marks the positions where the side to move is stuck as lost. After that,
+ * pass k finds the positions won in exactly k plies (some move leads to a
+ * position lost in k-1) and the ones lost in exactly k plies (every move
+ * leads to a position won in less than k). Passes go on until they stop
+ * finding anything, and positions that are never settled are draws. Each
+ * pass splits the slice between the threads. A slice with a position
+ * settled in more plies than a tablebase value can hold is an error
+ * rather than being written with its distances cut short.
+ */
+
+public class TablebaseGenerator {
+
+    // Generation values: 0 undecided, d > 0 won in d plies,
+    // d < 0 lost in (-d - 1) plies.
+    private static final short ILLEGAL = Short.MIN_VALUE;
+    private static final int CHUNK = 4096;
+
+    private int size;
+    private boolean maximalCapturesOnly;
+    private int threads;
+    private Path directory;
+    private Map<TablebaseSlice, byte[]> solved;
+    private int maxDistance;
+
+    public TablebaseGenerator(int size, boolean maximalCapturesOnly, int threads, Path root) {
+        this.size = size;
+        this.maximalCapturesOnly = maximalCapturesOnly;
+        this.threads = threads;
+        this.directory = root.resolve(Integer.toString(size));
+        this.solved = new HashMap<>();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: TablebaseGenerator size maxPieces [threads] [directory] [--maximal]");
+            System.exit(1);
+        }
+        int size = Integer.parseInt(args[0]);
+        int maxPieces = Integer.parseInt(args[1]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path root = Paths.get("tablebase");
+        boolean maximal = false;
+        int position = 0;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--maximal")) {
+                maximal = true;
+            } else if (position++ == 0) {
+                threads = Integer.parseInt(args[i]);
+            } else {
+                root = Paths.get(args[i]);
+            }
+        }
+        new TablebaseGenerator(size, maximal, threads, root).generate(maxPieces);
+    }
+
+    public void generate(int maxPieces) throws IOException, InterruptedException, ExecutionException {
+        List<TablebaseSlice> slices = new ArrayList<>();
+        int menSquares = size * size / 2 - size / 2;
+        for (int pieces = 2; pieces <= maxPieces; pieces++) {
+            for (int redMen = 0; redMen <= Math.min(pieces, menSquares); redMen++) {
+                for (int redKings = 0; redMen + redKings < pieces; redKings++) {
+                    for (int whiteMen = 0; redMen + redKings + whiteMen <= pieces &&
+                            whiteMen <= menSquares; whiteMen++) {
+                        int whiteKings = pieces - redMen - redKings - whiteMen;
+                        if (redMen + redKings > 0 && whiteMen + whiteKings > 0) {
+                            slices.add(new TablebaseSlice(size, redMen, redKings, whiteMen, whiteKings));
+                        }
+                    }
+                }
+            }
+        }
+        slices.sort(Comparator.comparingInt(TablebaseSlice::getPieceCount)
+                .thenComparingInt(s -> s.getRedMen() + s.getWhiteMen()));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (TablebaseSlice slice : slices) {
+                Path path = directory.resolve(slice.getFileName());
+                byte[] values;
+                if (Files.exists(path)) {
+                    values = Tablebase.read(path, maximalCapturesOnly);
+                    System.out.println(slice.getFileName() + ": read back");
+                } else {
+                    long start = System.nanoTime();
+                    values = solve(slice, pool);
+                    Tablebase.write(path, slice, maximalCapturesOnly, values);
+                    report(slice, values, System.nanoTime() - start);
+                }
+                for (byte v : values) {
+                    if (v != Tablebase.DRAW) {
+                        maxDistance = Math.max(maxDistance, Tablebase.getDistance(v & 0xFF));
+                    }
+                }
+                solved.put(slice, values);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private byte[] solve(TablebaseSlice slice, ExecutorService pool)
+            throws InterruptedException, ExecutionException {
+        if (slice.getEntries() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Slice " + slice.getFileName() + " is too large.");
+        }
+        short[] values = new short[(int) slice.getEntries()];
+        // A move into another slice can still settle a position in pass
+        // maxDistance + 1, even if the passes before it found nothing.
+        int k = 0;
+        while (true) {
+            long changed = pass(slice, values, k, pool);
+            if (changed == 0 && k > maxDistance) {
+                break;
+            }
+            if (changed > 0 && k > Tablebase.MAX_DISTANCE) {
+                throw new IllegalStateException("Slice " + slice.getFileName() + " has positions settled in " + k +
+                        " plies, more than a tablebase value can hold.");
+            }
+            k++;
+        }
+
+        byte[] out = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            short v = values[i];
+            if (v == ILLEGAL || v == 0) {
+                out[i] = Tablebase.DRAW;
+            } else if (v > 0) {
+                out[i] = (byte) Tablebase.win(v);
+            } else {
+                out[i] = (byte) Tablebase.loss(-v - 1);
+            }
+        }
+        return out;
+    }
+
+    // One pass over the slice, shared out between the threads a chunk at a time.
+    // Returns the number of positions it settled.
+    private long pass(TablebaseSlice slice, short[] values, int k, ExecutorService pool)
+            throws InterruptedException, ExecutionException {
+        AtomicLong nextChunk = new AtomicLong();
+        LongAdder changed = new LongAdder();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tasks.add(() -> {
+                Board rules = new Board(size);
+                rules.setMaximalCapturesOnly(maximalCapturesOnly);
+                BitBoard board = new BitBoard(rules);
+                MoveList moves = new MoveList();
+                long start;
+                while ((start = nextChunk.getAndAdd(CHUNK)) < values.length) {
+                    int end = (int) Math.min(values.length, start + CHUNK);
+                    for (int i = (int) start; i < end; i++) {
+                        if (values[i] == 0 && settle(slice, values, i, k, board, moves)) {
+                            changed.increment();
+                        }
+                    }
+                }
+                return null;
+            });
+        }
+        for (Future<Void> f : pool.invokeAll(tasks)) {
+            f.get();
+        }
+        return changed.sum();
+    }
+
+    private boolean settle(TablebaseSlice slice, short[] values, int index, int k,
+                           BitBoard board, MoveList moves) {
+        if (!slice.setPosition(board, index)) {
+            values[index] = ILLEGAL;
+            return false;
+        }
+        if (k == 0) {
+            if (!board.hasLegalMoves()) {
+                values[index] = -1;
+                return true;
+            }
+            return false;
+        }
+
+        // Only values settled in earlier passes count, because other
+        // threads are filling in this pass's values at the same time.
+        moves.clear();
+        board.getLegalMoves(moves);
+        boolean allWon = true;
+        for (int i = 0; i < moves.size(); i++) {
+            long m = moves.get(i);
+            long undo = board.applyMove(m);
+            int child = childValue(slice, values, board);
+            board.undoMove(m, undo);
+            if (child < 0 && -child - 1 < k) {
+                values[index] = (short) k;
+                return true;
+            }
+            if (child <= 0 || child >= k) {
+                allWon = false;
+            }
+        }
+        if (allWon) {
+            values[index] = (short) (-k - 1);
+            return true;
+        }
+        return false;
+    }
+
+    // The generation value of the position after a move, for its side to move.
+    private int childValue(TablebaseSlice slice, short[] values, BitBoard board) {
+        if (board.getPieces(board.getTurn()) == 0) {
+            return -1;
+        }
+        long kings = board.getKings();
+        long red = board.getPieces(Player.RED);
+        long white = board.getPieces(Player.WHITE);
+        if (Long.bitCount(red & ~kings) == slice.getRedMen() && Long.bitCount(red & kings) == slice.getRedKings() &&
+                Long.bitCount(white & ~kings) == slice.getWhiteMen() &&
+                Long.bitCount(white & kings) == slice.getWhiteKings()) {
+            short v = values[(int) slice.index(board)];
+            return v == ILLEGAL ? 0 : v;
+        }
+        TablebaseSlice other = TablebaseSlice.of(board);
+        byte[] otherValues = solved.get(other);
+        if (otherValues == null) {
+            throw new IllegalStateException("Slice " + other.getFileName() + " hasn't been solved.");
+        }
+        int v = otherValues[(int) other.index(board)] & 0xFF;
+        if (Tablebase.isWin(v)) {
+            return Tablebase.getDistance(v);
+        } else if (Tablebase.isLoss(v)) {
+            return -Tablebase.getDistance(v) - 1;
+        }
+        return 0;
+    }
+
+    private void report(TablebaseSlice slice, byte[] values, long nanos) {
+        long wins = 0;
+        long losses = 0;
+        for (byte b : values) {
+            int v = b & 0xFF;
+            if (Tablebase.isWin(v)) {
+                wins++;
+            } else if (Tablebase.isLoss(v)) {
+                losses++;
+            }
+        }
+        System.out.printf("%s: %d positions, %d won, %d lost, %d drawn or unreachable, %.1fs%n",
+                slice.getFileName(), values.length, wins, losses, values.length - wins - losses, nanos / 1e9);
+    }
+}
@@ -0,0 +1,289 @@
+package tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import ai.AlphaBetaAI;
+import ai.AlphaBetaAI.StaticEval;
+import ai.EvalWeights;
+import checkers.BitBoard;
+import checkers.Board;
+import checkers.Board.*;
+import checkers.Move;
+import checkers.MoveList;
+
+/**
+ * Tunes the positional evaluation weights on positions from self-play
+ * games, the way Texel tuning does.
+ *
+ *   java tools.TexelTuner extract games dataset [size] [depth] [threads] [--maximal]
+ *   java tools.TexelTuner tune dataset [weights] [threads]
+ *
+ * extract plays games of AlphaBetaAI against itself from random openings
+ * and saves every quiet position (one where the side to move can't
+ * capture) together with the result of its game. The dataset holds a
+ * header and then 25 bytes per position: the red, white and king masks of
+ * the BitBoard, and a byte with the side to move and the result.
+ *
+ * tune turns a score into a predicted result with a logistic curve,
+ * 1 / (1 + 10^(-k * score / 400)), picks the k that fits the current
+ * weights best, and then changes one weight at a time by one point for as
+ * long as that lowers the mean squared difference between the predicted
+ * and the actual results. The error over the whole dataset is summed by a
+ * parallel stream. The weights are written to a file that ai.EvalWeights
+ * reads; copy it to eval.weights in the working directory to use it.
+ */
+
+public class TexelTuner {
+
+    private static final int MAGIC = 0x434B5444;
+    private static final int VERSION = 1;
+    private static final int OPENING_PLIES = 6;
+    private static final int MAX_PLIES = 300;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 3 && args[0].equals("extract")) {
+            int games = Integer.parseInt(args[1]);
+            Path path = Paths.get(args[2]);
+            int size = 8;
+            int depth = 6;
+            int threads = Runtime.getRuntime().availableProcessors();
+            boolean maximal = false;
+            int position = 0;
+            for (int i = 3; i < args.length; i++) {
+                if (args[i].equals("--maximal")) {
+                    maximal = true;
+                } else if (position == 0) {
+                    size = Integer.parseInt(args[i]);
+                    position++;
+                } else if (position == 1) {
+                    depth = Integer.parseInt(args[i]);
+                    position++;
+                } else {
+                    threads = Integer.parseInt(args[i]);
+                }
+            }
+            extract(games, path, size, depth, threads, maximal);
+        } else if (args.length >= 2 && args[0].equals("tune")) {
+            Path weights = Paths.get(args.length > 2 ? args[2] : "eval.weights");
+            int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            tune(Paths.get(args[1]), weights, threads);
+        } else {
+            System.err.println("Usage: TexelTuner extract games dataset [size] [depth] [threads] [--maximal]");
+            System.err.println("       TexelTuner tune dataset [weights] [threads]");
+            System.exit(1);
+        }
+    }
+
+    // Plays the games in parallel and writes their quiet positions.
+    public static void extract(int games, Path path, int size, int depth, int threads, boolean maximal)
+            throws Exception {
+        ThreadLocal<AlphaBetaAI> agents = ThreadLocal.withInitial(() -> {
+            AlphaBetaAI agent = new AlphaBetaAI(depth, false, StaticEval.POSITIONAL_PIECEVALUE);
+            agent.setOpeningBook(null);
+            return agent;
+        });
+        List<long[]> positions = new ArrayList<>();
+        AtomicInteger finished = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<List<long[]>>> results = new ArrayList<>();
+            for (int g = 0; g < games; g++) {
+                long seed = g;
+                results.add(pool.submit(() -> {
+                    List<long[]> game = playGame(agents.get(), new Random(seed), size, maximal);
+                    int done = finished.incrementAndGet();
+                    if (done % 100 == 0) {
+                        System.out.printf("%d games, %.1fs%n", done, (System.nanoTime() - start) / 1e9);
+                    }
+                    return game;
+                }));
+            }
+            for (Future<List<long[]>> result : results) {
+                positions.addAll(result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(positions.size());
+            for (long[] p : positions) {
+                out.writeLong(p[0]);
+                out.writeLong(p[1]);
+                out.writeLong(p[2]);
+                out.writeByte((int) p[3]);
+            }
+        }
+        System.out.println("Wrote " + positions.size() + " positions to " + path);
+    }
+
+    // One game's quiet positions, each as red, white, kings and the flags byte:
+    // bit 0 set if white is to move, and the result in red's points times two above it.
+    private static List<long[]> playGame(AlphaBetaAI agent, Random random, int size, boolean maximal) {
+        Board board = new Board(size);
+        board.setMaximalCapturesOnly(maximal);
+        List<long[]> positions = new ArrayList<>();
+        MoveList captures = new MoveList();
+        for (int ply = 0; ply < MAX_PLIES && !board.isOver(); ply++) {
+            Move m;
+            if (ply < OPENING_PLIES) {
+                List<Move> moves = board.getLegalMoves();
+                m = moves.get(random.nextInt(moves.size()));
+            } else {
+                BitBoard position = new BitBoard(board);
+                captures.clear();
+                position.getCaptureMoves(captures);
+                if (captures.size() == 0) {
+                    positions.add(new long[]{position.getPieces(Player.RED), position.getPieces(Player.WHITE),
+                            position.getKings(), position.getTurn() == Player.WHITE ? 1 : 0});
+                }
+                m = agent.chooseMove(board);
+            }
+            board.applyMove(m);
+        }
+        Player winner = board.isOver() ? board.findWinner() : null;
+        int result = winner == Player.RED ? 2 : winner == Player.WHITE ? 0 : 1;
+        for (long[] p : positions) {
+            p[3] |= result << 1;
+        }
+        return positions;
+    }
+
+    // Fits the weights to the dataset, starting from the ones in use, and writes them.
+    public static void tune(Path dataset, Path output, int threads) throws Exception {
+        Dataset data = Dataset.read(dataset);
+        System.out.println(data.size + " positions");
+        // A pool of its own, so that the parallel streams use the given number of threads.
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            int[] weights = EvalWeights.getDefault().toArray();
+            double k = pool.submit(() -> data.fitScale(weights)).get();
+            double best = pool.submit(() -> data.error(weights, k)).get();
+            System.out.printf("k %.4f, error %.6f with %s%n", k, best, new EvalWeights(weights));
+
+            boolean improved = true;
+            for (int round = 1; improved; round++) {
+                improved = false;
+                for (int i = 0; i < EvalWeights.COUNT; i++) {
+                    for (int step : new int[]{1, -1}) {
+                        weights[i] += step;
+                        double error = pool.submit(() -> data.error(weights, k)).get();
+                        if (error < best) {
+                            best = error;
+                            improved = true;
+                            // Keep going the same way while it helps.
+                            while (true) {
+                                weights[i] += step;
+                                error = pool.submit(() -> data.error(weights, k)).get();
+                                if (error >= best) {
+                                    weights[i] -= step;
+                                    break;
+                                }
+                                best = error;
+                            }
+                            break;
+                        }
+                        weights[i] -= step;
+                    }
+                }
+                System.out.printf("round %d, error %.6f with %s%n", round, best, new EvalWeights(weights));
+            }
+            new EvalWeights(weights).write(output);
+            System.out.println("Wrote " + output);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The features and results of every position in a dataset.
+     */
+    private static class Dataset {
+
+        private int size;
+        private short[] features;
+        // Red's points from the game, 0, 0.5 or 1.
+        private double[] results;
+
+        static Dataset read(Path path) throws IOException {
+            Dataset data = new Dataset();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a tuning dataset: " + path);
+                }
+                BitBoard board = new BitBoard(in.readInt());
+                data.size = in.readInt();
+                data.features = new short[data.size * EvalWeights.COUNT];
+                data.results = new double[data.size];
+                int[] f = new int[EvalWeights.COUNT];
+                for (int i = 0; i < data.size; i++) {
+                    long red = in.readLong();
+                    long white = in.readLong();
+                    long kings = in.readLong();
+                    int flags = in.readByte();
+                    board.setPosition(red, white, kings, (flags & 1) == 0 ? Player.RED : Player.WHITE);
+                    EvalWeights.features(board, f);
+                    for (int j = 0; j < f.length; j++) {
+                        data.features[i * EvalWeights.COUNT + j] = (short) f[j];
+                    }
+                    data.results[i] = (flags >> 1) / 2.0;
+                }
+            }
+            return data;
+        }
+
+        // Mean squared difference between the results and the predicted results.
+        double error(int[] weights, double k) {
+            return IntStream.range(0, size).parallel().mapToDouble(i -> {
+                int score = 0;
+                for (int j = 0; j < EvalWeights.COUNT; j++) {
+                    score += weights[j] * features[i * EvalWeights.COUNT + j];
+                }
+                double predicted = 1 / (1 + Math.pow(10, -k * score / 400));
+                double difference = results[i] - predicted;
+                return difference * difference;
+            }).sum() / size;
+        }
+
+        // The scale k with the lowest error, to within 0.001, by narrowing down
+        // on the minimum a tenth of the range at a time.
+        double fitScale(int[] weights) {
+            double best = 1;
+            for (double step = 0.1; step >= 0.001; step /= 10) {
+                double low = Math.max(step, best - 10 * step);
+                double bestError = Double.MAX_VALUE;
+                for (double k = low; k <= best + 10 * step; k += step) {
+                    double error = error(weights, k);
+                    if (error < bestError) {
+                        bestError = error;
+                        best = k;
+                    }
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import ai.Agent;
+import ai.AlphaBetaAI;
+import ai.AlphaBetaAI.SearchMode;
+import ai.AlphaBetaAI.StaticEval;
+import ai.RandomAI;
+import ai.YoungBrothersAI;
+import checkers.Board;
+import checkers.Board.*;
+import checkers.Move;
+import checkers.PdnGame;
+import checkers.PdnWriter;
+
+/**
+ * Plays a match between two agents without the GUI, many games at once.
+ *
+ *   java tools.Tournament [options] agentA agentB
+ *     --games n          games to play, rounded up to an even number (default 100)
+ *     --size n           board size (default 8)
+ *     --threads n        games played at the same time (default: one per core)
+ *     --opening-plies n  random plies played before the agents take over (default 4)
+ *     --max-plies n      plies after which a game is a draw (default 300)
+ *     --seed n           seed for the random openings (default 1)
+ *     --maximal          use the maximal-captures-only rule
+ *     --pdn file         save the games to a PDN file
+ *
+ * An agent is "random", "alphabeta" or "ybw" followed by options, for example
+ * "alphabeta:depth=8,eval=basic", "alphabeta:time=1,threads=2", or
+ * "alphabeta:depth=6,book=off,tablebase=off". AlphaBetaAI options are
+ * depth, time (seconds per move, instead of depth), eval (basic or
+ * positional), threads, table (megabytes), book, tablebase, mode
+ * (alphabeta, pvs or mtdf), and the selective search switches quiescence,
+ * lmr and futility. YoungBrothersAI ("ybw") options are depth, eval and
+ * threads, so "alphabeta:depth=8,threads=4,book=off,tablebase=off" against
+ * "ybw:depth=8,threads=4" compares the two ways of searching in parallel.
+ *
+ * Games are played in pairs from the same random opening, once with each
+ * agent as red, so that neither the opening nor the first move favours
+ * one of them. Each thread keeps its own pair of agents from game to game.
+ * The result is given from agent A's point of view, with the Elo
+ * difference and its 95% confidence interval.
+ */
+
+public class Tournament {
+
+    private int size = 8;
+    private int openingPlies = 4;
+    private int maxPlies = 300;
+    private long seed = 1;
+    private boolean maximalCapturesOnly;
+    private ThreadLocal<Agent[]> agents;
+    // Every agent made, so that the ones holding threads can be closed.
+    private List<Agent> created = new ArrayList<>();
+    private String[] names = {"A", "B"};
+    private PdnWriter pdn;
+
+    public Tournament(Supplier<Agent> first, Supplier<Agent> second) {
+        this.agents = ThreadLocal.withInitial(() -> {
+            Agent[] pair = {first.get(), second.get()};
+            synchronized (created) {
+                created.add(pair[0]);
+                created.add(pair[1]);
+            }
+            return pair;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> specs = new ArrayList<>();
+        int size = 8;
+        int openingPlies = 4;
+        int maxPlies = 300;
+        long seed = 1;
+        boolean maximal = false;
+        String pdn = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games": games = Integer.parseInt(args[++i]); break;
+                case "--size": size = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--opening-plies": openingPlies = Integer.parseInt(args[++i]); break;
+                case "--max-plies": maxPlies = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--maximal": maximal = true; break;
+                case "--pdn": pdn = args[++i]; break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        System.err.println("Unknown option " + args[i]);
+                        System.exit(1);
+                    }
+                    specs.add(args[i]);
+            }
+        }
+        if (specs.size() != 2) {
+            System.err.println("Usage: Tournament [options] agentA agentB");
+            System.exit(1);
+        }
+
+        Tournament tournament = new Tournament(agent(specs.get(0)), agent(specs.get(1)));
+        tournament.size = size;
+        tournament.openingPlies = openingPlies;
+        tournament.maxPlies = maxPlies;
+        tournament.seed = seed;
+        tournament.maximalCapturesOnly = maximal;
+        tournament.names = new String[]{specs.get(0), specs.get(1)};
+        if (pdn != null) {
+            tournament.pdn = new PdnWriter(Files.newBufferedWriter(Paths.get(pdn)));
+        }
+        System.out.println(specs.get(0) + " against " + specs.get(1) + ", " + size + "x" + size);
+        try {
+            Result result = tournament.play((games + 1) / 2, threads);
+            System.out.println(result);
+        } finally {
+            tournament.closeAgents();
+            if (tournament.pdn != null) {
+                tournament.pdn.close();
+            }
+        }
+    }
+
+    // Closes the agents that need it, once no more games will be played.
+    public void closeAgents() throws Exception {
+        synchronized (created) {
+            for (Agent agent : created) {
+                if (agent instanceof AutoCloseable) {
+                    ((AutoCloseable) agent).close();
+                }
+            }
+            created.clear();
+        }
+    }
+
+    // Makes agents from a description like "alphabeta:depth=8,eval=basic".
+    public static Supplier<Agent> agent(String spec) {
+        String[] parts = spec.split(":", 2);
+        if (parts[0].equals("random")) {
+            return RandomAI::new;
+        }
+        if (parts[0].equals("ybw")) {
+            return youngBrothers(parts.length > 1 ? parts[1] : "");
+        }
+        if (!parts[0].equals("alphabeta")) {
+            throw new IllegalArgumentException("Unknown agent " + parts[0]);
+        }
+        int depth = 6;
+        int seconds = 0;
+        StaticEval eval = StaticEval.POSITIONAL_PIECEVALUE;
+        int threads = 1;
+        int table = 16;
+        boolean book = true;
+        boolean tablebase = true;
+        SearchMode mode = SearchMode.ALPHA_BETA;
+        boolean[] selective = {true, true, true};
+        if (parts.length > 1) {
+            for (String option : parts[1].split(",")) {
+                String[] kv = option.split("=", 2);
+                String value = kv.length > 1 ? kv[1] : "";
+                switch (kv[0]) {
+                    case "depth": depth = Integer.parseInt(value); break;
+                    case "time": seconds = Integer.parseInt(value); break;
+                    case "eval":
+                        eval = value.equals("basic") ? StaticEval.BASIC_PIECEVALUE : StaticEval.POSITIONAL_PIECEVALUE;
+                        break;
+                    case "threads": threads = Integer.parseInt(value); break;
+                    case "table": table = Integer.parseInt(value); break;
+                    case "book": book = !value.equals("off"); break;
+                    case "tablebase": tablebase = !value.equals("off"); break;
+                    case "mode": mode = searchMode(value); break;
+                    case "quiescence": selective[0] = !value.equals("off"); break;
+                    case "lmr": selective[1] = !value.equals("off"); break;
+                    case "futility": selective[2] = !value.equals("off"); break;
+                    default: throw new IllegalArgumentException("Unknown AlphaBetaAI option " + kv[0]);
+                }
+            }
+        }
+        boolean timed = seconds > 0;
+        int strength = timed ? seconds : depth;
+        StaticEval evalType = eval;
+        int searchThreads = threads;
+        int tableMegabytes = table;
+        boolean useBook = book;
+        boolean useTablebase = tablebase;
+        SearchMode searchMode = mode;
+        return () -> {
+            AlphaBetaAI bot = new AlphaBetaAI(strength, timed, evalType, tableMegabytes);
+            bot.setThreads(searchThreads);
+            if (!useBook) {
+                bot.setOpeningBook(null);
+            }
+            if (!useTablebase) {
+                bot.setTablebase(null);
+            }
+            bot.setSearchMode(searchMode);
+            bot.setQuiescence(selective[0]);
+            bot.setLateMoveReductions(selective[1]);
+            bot.setFutilityPruning(selective[2]);
+            return bot;
+        };
+    }
+
+    // Makes YoungBrothersAI agents from options like "depth=8,threads=4".
+    private static Supplier<Agent> youngBrothers(String options) {
+        int depth = 6;
+        StaticEval eval = StaticEval.POSITIONAL_PIECEVALUE;
+        int threads = 1;
+        for (String option : options.isEmpty() ? new String[0] : options.split(",")) {
+            String[] kv = option.split("=", 2);
+            String value = kv.length > 1 ? kv[1] : "";
+            switch (kv[0]) {
+                case "depth": depth = Integer.parseInt(value); break;
+                case "eval":
+                    eval = value.equals("basic") ? StaticEval.BASIC_PIECEVALUE : StaticEval.POSITIONAL_PIECEVALUE;
+                    break;
+                case "threads": threads = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown YoungBrothersAI option " + kv[0]);
+            }
+        }
+        int searchDepth = depth;
+        StaticEval evalType = eval;
+        int searchThreads = threads;
+        return () -> new YoungBrothersAI(searchDepth, evalType, searchThreads);
+    }
+
+    private static SearchMode searchMode(String name) {
+        switch (name) {
+            case "alphabeta": return SearchMode.ALPHA_BETA;
+            case "pvs": return SearchMode.PVS;
+            case "mtdf": return SearchMode.MTDF;
+            default: throw new IllegalArgumentException("Unknown search mode " + name);
+        }
+    }
+
+    // Plays the given number of pairs of games, a bounded number at a time.
+    public Result play(int pairs, int threads) throws Exception {
+        Result result = new Result();
+        AtomicInteger finished = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> games = new ArrayList<>();
+            for (int pair = 0; pair < pairs; pair++) {
+                List<Move> opening = randomOpening(new Random(seed * 1000003 + pair));
+                for (int firstIsRed = 0; firstIsRed < 2; firstIsRed++) {
+                    boolean redIsFirst = firstIsRed == 1;
+                    games.add(pool.submit(() -> {
+                        Player winner = playGame(opening, redIsFirst);
+                        Player first = redIsFirst ? Player.RED : Player.WHITE;
+                        result.add(winner == null ? 0.5 : winner == first ? 1 : 0);
+                        int done = finished.incrementAndGet();
+                        if (done % 20 == 0) {
+                            System.out.printf("%d games: %s%n", done, result.summary());
+                        }
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> game : games) {
+                game.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    // A few random plies from the start position, as moves of a board
+    // that's only used to pick them; each game replays them on its own.
+    private List<Move> randomOpening(Random random) {
+        Board board = newBoard();
+        List<Move> opening = new ArrayList<>();
+        for (int i = 0; i < openingPlies && !board.isOver(); i++) {
+            List<Move> moves = board.getLegalMoves();
+            Move m = moves.get(random.nextInt(moves.size()));
+            opening.add(m);
+            board.applyMove(m);
+        }
+        return opening;
+    }
+
+    // Returns the winner, or null for a draw.
+    private Player playGame(List<Move> opening, boolean redIsFirst) throws IOException {
+        Agent[] pair = agents.get();
+        Agent red = redIsFirst ? pair[0] : pair[1];
+        Agent white = redIsFirst ? pair[1] : pair[0];
+        Board board = newBoard();
+        PdnGame game = new PdnGame(board);
+        game.setTag("Event", "Tournament");
+        game.setTag("Black", redIsFirst ? names[0] : names[1]);
+        game.setTag("White", redIsFirst ? names[1] : names[0]);
+        for (Move m : opening) {
+            Move move = board.transferMove(m);
+            board.applyMove(move);
+            game.addMove(move);
+        }
+        for (int ply = opening.size(); ply < maxPlies && !board.isOver(); ply++) {
+            Agent agent = board.getTurn() == Player.RED ? red : white;
+            Move move = agent.chooseMove(board);
+            board.applyMove(move);
+            game.addMove(move);
+        }
+        Player winner = board.isOver() ? board.findWinner() : null;
+        if (pdn != null) {
+            game.setWinner(winner);
+            pdn.writeGame(game);
+        }
+        return winner;
+    }
+
+    private Board newBoard() {
+        Board board = new Board(size);
+        board.setMaximalCapturesOnly(maximalCapturesOnly);
+        return board;
+    }
+
+    /**
+     * The score of a match from the first agent's point of view.
+     */
+    public static class Result {
+
+        private int wins;
+        private int draws;
+        private int losses;
+        private long nanos;
+
+        synchronized void add(double score) {
+            if (score == 1) {
+                wins++;
+            } else if (score == 0) {
+                losses++;
+            } else {
+                draws++;
+            }
+        }
+
+        public synchronized int getGames() {
+            return wins + draws + losses;
+        }
+
+        // Points per game, between 0 and 1.
+        public synchronized double getScore() {
+            return (wins + draws / 2.0) / getGames();
+        }
+
+        public synchronized double getEloDifference() {
+            return elo(getScore());
+        }
+
+        // Half the width of the 95% confidence interval of the Elo difference,
+        // from the spread of the per-game scores. With a perfect score either
+        // way it's unbounded.
+        public synchronized double getEloError() {
+            int n = getGames();
+            double s = getScore();
+            if (s == 0 || s == 1) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double variance = (wins * (1 - s) * (1 - s) + draws * (0.5 - s) * (0.5 - s) + losses * s * s) / n;
+            double deviation = 1.96 * Math.sqrt(variance / n);
+            return (elo(Math.min(1, s + deviation)) - elo(Math.max(0, s - deviation))) / 2;
+        }
+
+        private static double elo(double score) {
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        synchronized String summary() {
+            return String.format("+%d =%d -%d, Elo %+.0f +/- %.0f", wins, draws, losses,
+                    getEloDifference(), getEloError());
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%d games: %s, score %.1f%%, %.2f games/s", getGames(), summary(),
+                    100 * getScore(), getGames() / (nanos / 1e9));
+        }
+    }
+}